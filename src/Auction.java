@@ -1,16 +1,24 @@
-import java.io.Serializable;
+import org.jgroups.util.SizeStreamable;
+import org.jgroups.util.Bits;
+import java.io.*;
 import java.math.BigDecimal;
-import java.util.Random;
 
 /**
  * An instance of this class will be created when
  * the method newAction is invoked
  * @author Emmeleia Arakleitou
  */
-public class Auction implements Serializable {
+public class Auction implements SizeStreamable, Externalizable {
 
+    //the longest time in milliseconds an auction can run before it is closed automatically, one year.
+    public static final long MAX_DURATION = 365L * 24 * 60 * 60 * 1000;
     private String itemDesc, highestBidderID,auctionStatus,auctionID,sellerID;
-    private BigDecimal startingPrice, reservedPrice, highestBid;
+    //amounts in minor units, see Money
+    private long startingPrice, reservedPrice, highestBid;
+    //the time the auction was closed by the primary, 0 while the auction is active.
+    private long closedTime;
+    //the time the auction is closed automatically, 0 if only the seller closes it.
+    private long endTime;
 
     /**
      * Constructor of the class with the following parameters
@@ -21,8 +29,25 @@ public class Auction implements Serializable {
      * @param highestBidderID The ID of the highest bidder
      * @param sellerID The ID of the seller
      * @param auctionStatus Status of the auction
+     * @throws ArithmeticException if an amount has more than Money.SCALE decimal places
      */
     public Auction(String itemDesc, BigDecimal startingPrice, BigDecimal reservedPrice,BigDecimal highestBid, String highestBidderID, String sellerID, String auctionStatus )
+    {
+        this(itemDesc, Money.toMinor(startingPrice), Money.toMinor(reservedPrice), Money.toMinor(highestBid),
+                highestBidderID, sellerID, auctionStatus);
+    }
+
+    /**
+     * Constructor of the class with the amounts in minor units
+     * @param itemDesc  A small description of the item to sold
+     * @param startingPrice The starting price of the item in minor units
+     * @param reservedPrice The minimum accepted price for an item in minor units
+     * @param highestBid The current highest bid in minor units
+     * @param highestBidderID The ID of the highest bidder
+     * @param sellerID The ID of the seller
+     * @param auctionStatus Status of the auction
+     */
+    public Auction(String itemDesc, long startingPrice, long reservedPrice, long highestBid, String highestBidderID, String sellerID, String auctionStatus )
     {
         this.itemDesc = itemDesc;
         this.startingPrice = startingPrice;
@@ -34,14 +59,33 @@ public class Auction implements Serializable {
     }
 
     /**
-     * Create an actionID returns the auctionID
-     * @return the ID of the auction used to invoke the method
+     * Constructor with no parameters used to decode an auction from its binary form.
      */
-    public String createAuctionID()
+    public Auction()
     {
-        Random rand = new Random();
-        auctionID =  Integer.toString(rand.nextInt(1000) + 1);
-        return auctionID;
+    }
+
+    /**
+     * Copy constructor, used to change an auction of the state without changing
+     * the instance that may still be read by another thread.
+     * @param auction the auction to copy
+     */
+    public Auction(Auction auction)
+    {
+        this(auction.itemDesc, auction.startingPrice, auction.reservedPrice, auction.highestBid,
+                auction.highestBidderID, auction.sellerID, auction.auctionStatus);
+        this.auctionID = auction.auctionID;
+        this.closedTime = auction.closedTime;
+        this.endTime = auction.endTime;
+    }
+
+    /**
+     * Mutator for the auctionID, the ID is given by the primary replica when the auction is created
+     * @param auctionID the ID of the auction used to invoke the method
+     */
+    public void setAuctionID(String auctionID)
+    {
+        this.auctionID = auctionID;
     }
 
     /**
@@ -57,6 +101,14 @@ public class Auction implements Serializable {
      * @return the starting price of the item
      */
     public BigDecimal getStartingPrice() {
+        return Money.toDecimal(startingPrice);
+    }
+
+    /**
+     * Accessor for startingPrice in minor units
+     * @return the starting price of the item
+     */
+    public long getStartingPriceMinor() {
         return startingPrice;
     }
 
@@ -65,6 +117,14 @@ public class Auction implements Serializable {
      * @return the minimum acceptable price by the seller
      */
     public BigDecimal getReservedPrice() {
+        return Money.toDecimal(reservedPrice);
+    }
+
+    /**
+     * Accessor for reservedPrice in minor units
+     * @return the minimum acceptable price by the seller
+     */
+    public long getReservedPriceMinor() {
         return reservedPrice;
     }
 
@@ -73,6 +133,14 @@ public class Auction implements Serializable {
      * @return the current highest bid for an auction
      */
     public BigDecimal getHighestBid() {
+        return Money.toDecimal(highestBid);
+    }
+
+    /**
+     * Accessor for highestBid in minor units
+     * @return the current highest bid for an auction
+     */
+    public long getHighestBidMinor() {
         return highestBid;
     }
 
@@ -84,6 +152,22 @@ public class Auction implements Serializable {
         return highestBidderID;
     }
 
+    /**
+     * Checks if a bid was accepted. The highest bidder of an auction with no bid is blank.
+     * @return true if the auction has a highest bidder
+     */
+    public boolean hasHighestBidder() {
+        return highestBidderID != null && !highestBidderID.trim().isEmpty();
+    }
+
+    /**
+     * Returns the winner of the auction, the highest bidder if the highest bid is not less than the reserved price
+     * @return the ID of the winner, or null if no bid was accepted or the reserved price is not met
+     */
+    public String getWinnerID() {
+        return hasHighestBidder() && highestBid >= reservedPrice ? highestBidderID : null;
+    }
+
     /**
      * Accessor for auctionStatus
      * @return the status of an auction
@@ -110,9 +194,9 @@ public class Auction implements Serializable {
 
     /**
      * Mutator for currentHighest
-     * @param currentHighest The current highest bid
+     * @param currentHighest The current highest bid in minor units
      */
-    public void setHighestBid(BigDecimal currentHighest) {
+    public void setHighestBid(long currentHighest) {
         this.highestBid = currentHighest;
     }
 
@@ -133,4 +217,114 @@ public class Auction implements Serializable {
     {
         this.auctionStatus = status;
     }
-}
\ No newline at end of file
+
+    /**
+     * Accessor for the time the auction was closed
+     * @return the time in milliseconds since the epoch, 0 if the auction is active
+     */
+    public long getClosedTime() {
+        return closedTime;
+    }
+
+    /**
+     * Mutator for the time the auction was closed
+     * @param closedTime the time in milliseconds since the epoch
+     */
+    public void setClosedTime(long closedTime) {
+        this.closedTime = closedTime;
+    }
+
+    /**
+     * Accessor for the time the auction is closed automatically
+     * @return the time in milliseconds since the epoch, 0 if only the seller closes the auction
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * Mutator for the time the auction is closed automatically, set by the primary when the auction is created
+     * @param endTime the time in milliseconds since the epoch, 0 if only the seller closes the auction
+     */
+    public void setEndTime(long endTime) {
+        this.endTime = endTime;
+    }
+
+    /**
+     * Writes the auction in the binary format
+     * @param out the output to write to
+     * @throws IOException
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException
+    {
+        WireFormat.writeVersion(out);
+        Bits.writeString(auctionID, out);
+        Bits.writeString(itemDesc, out);
+        Bits.writeString(sellerID, out);
+        Bits.writeString(highestBidderID, out);
+        Bits.writeString(auctionStatus, out);
+        Bits.writeLong(startingPrice, out);
+        Bits.writeLong(reservedPrice, out);
+        Bits.writeLong(highestBid, out);
+        Bits.writeLong(closedTime, out);
+        Bits.writeLong(endTime, out);
+    }
+
+    /**
+     * Reads the auction from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    @Override
+    public void readFrom(DataInput in) throws IOException
+    {
+        byte version = WireFormat.readVersion(in);
+        auctionID = Bits.readString(in);
+        itemDesc = Bits.readString(in);
+        sellerID = Bits.readString(in);
+        highestBidderID = Bits.readString(in);
+        auctionStatus = Bits.readString(in);
+        startingPrice = Bits.readLong(in);
+        reservedPrice = Bits.readLong(in);
+        highestBid = Bits.readLong(in);
+        closedTime = Bits.readLong(in);
+        //the auctions archived before version 5 are only closed by their seller.
+        endTime = version >= 5 ? Bits.readLong(in) : 0;
+    }
+
+    /**
+     * Returns the number of bytes of the binary format
+     * @return int
+     */
+    @Override
+    public int size()
+    {
+        return 1 + Bits.size(auctionID) + Bits.size(itemDesc) + Bits.size(sellerID)
+                + Bits.size(highestBidderID) + Bits.size(auctionStatus) + Bits.size(startingPrice)
+                + Bits.size(reservedPrice) + Bits.size(highestBid) + Bits.size(closedTime)
+                + Bits.size(endTime);
+    }
+
+    /**
+     * Java serialization of the auction, used by RMI, in the binary format
+     * @param out the output to write to
+     * @throws IOException
+     */
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException
+    {
+        writeTo(out);
+    }
+
+    /**
+     * Java deserialization of the auction from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    @Override
+    public void readExternal(ObjectInput in) throws IOException
+    {
+        readFrom(in);
+    }
+}
@@ -0,0 +1,187 @@
+import org.jgroups.util.SizeStreamable;
+import org.jgroups.util.Bits;
+import java.math.BigDecimal;
+import java.io.*;
+
+/**
+ * A change of an auction that is pushed to the clients that participate in the auction.
+ * @author Emmeleia Arakleitou
+ */
+public class AuctionEvent implements SizeStreamable, Externalizable {
+
+    /**
+     * The kinds of changes that are pushed to the clients
+     */
+    public enum Type {CLOSED, OUTBID, PRICE_CHANGED}
+
+    private Type type;
+    private String auctionID, itemDesc, winnerID, highestBidderID;
+    //in minor units, see Money
+    private long highestBid;
+
+    /**
+     * Constructor with no parameters used to decode an event from its binary form.
+     */
+    public AuctionEvent()
+    {
+    }
+
+    /**
+     * Constructor of the class
+     * @param type the kind of the change
+     * @param auctionID ID of the auction
+     * @param itemDesc the description of the item
+     * @param highestBid the highest bid of the auction in minor units
+     * @param winnerID ID of the winner, null if there is no winner
+     */
+    public AuctionEvent(Type type, String auctionID, String itemDesc, long highestBid, String winnerID)
+    {
+        this.type = type;
+        this.auctionID = auctionID;
+        this.itemDesc = itemDesc;
+        this.highestBid = highestBid;
+        this.winnerID = winnerID;
+    }
+
+    /**
+     * Creates the event of an auction that was closed. The highest bidder is the winner
+     * if a bid was accepted and the highest bid is not less than the reserved price.
+     * @param auction the closed auction
+     * @return AuctionEvent
+     */
+    public static AuctionEvent closed(Auction auction)
+    {
+        AuctionEvent event = new AuctionEvent(Type.CLOSED, auction.getAuctionID(), auction.getItemDesc(), auction.getHighestBidMinor(), auction.getWinnerID());
+        event.highestBidderID = auction.hasHighestBidder() ? auction.getHighestBidderID() : null;
+        return event;
+    }
+
+    /**
+     * Creates the event of a new highest bid
+     * @param type OUTBID for the previous highest bidder, PRICE_CHANGED for the other participants
+     * @param auctionID ID of the auction
+     * @param highestBid the new highest bid in minor units
+     * @param highestBidderID ID of the new highest bidder
+     * @return AuctionEvent
+     */
+    public static AuctionEvent priceChanged(Type type, String auctionID, long highestBid, String highestBidderID)
+    {
+        AuctionEvent event = new AuctionEvent(type, auctionID, null, highestBid, null);
+        event.highestBidderID = highestBidderID;
+        return event;
+    }
+
+    /**
+     * Accessor for the type of the change
+     * @return Type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Accessor for the auction ID
+     * @return String
+     */
+    public String getAuctionID() {
+        return auctionID;
+    }
+
+    /**
+     * Accessor for the description of the item
+     * @return String
+     */
+    public String getItemDesc() {
+        return itemDesc;
+    }
+
+    /**
+     * Accessor for the highest bid
+     * @return BigDecimal
+     */
+    public BigDecimal getHighestBid() {
+        return Money.toDecimal(highestBid);
+    }
+
+    /**
+     * Accessor for the ID of the highest bidder
+     * @return String
+     */
+    public String getHighestBidderID() {
+        return highestBidderID;
+    }
+
+    /**
+     * Accessor for the ID of the winner
+     * @return the ID of the winner, null if there is no winner
+     */
+    public String getWinnerID() {
+        return winnerID;
+    }
+
+    /**
+     * Writes the event in the binary format
+     * @param out the output to write to
+     * @throws IOException
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException
+    {
+        WireFormat.writeVersion(out);
+        out.writeByte(type.ordinal());
+        Bits.writeString(auctionID, out);
+        Bits.writeString(itemDesc, out);
+        Bits.writeString(winnerID, out);
+        Bits.writeString(highestBidderID, out);
+        Bits.writeLong(highestBid, out);
+    }
+
+    /**
+     * Reads the event from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    @Override
+    public void readFrom(DataInput in) throws IOException
+    {
+        WireFormat.readVersion(in);
+        type = Type.values()[in.readByte()];
+        auctionID = Bits.readString(in);
+        itemDesc = Bits.readString(in);
+        winnerID = Bits.readString(in);
+        highestBidderID = Bits.readString(in);
+        highestBid = Bits.readLong(in);
+    }
+
+    /**
+     * Returns the number of bytes of the binary format
+     * @return int
+     */
+    @Override
+    public int size()
+    {
+        return 1 + 1 + Bits.size(auctionID) + Bits.size(itemDesc) + Bits.size(winnerID) + Bits.size(highestBidderID) + Bits.size(highestBid);
+    }
+
+    /**
+     * Java serialization of the event, used by RMI, in the binary format
+     * @param out the output to write to
+     * @throws IOException
+     */
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException
+    {
+        writeTo(out);
+    }
+
+    /**
+     * Java deserialization of the event from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    @Override
+    public void readExternal(ObjectInput in) throws IOException
+    {
+        readFrom(in);
+    }
+}
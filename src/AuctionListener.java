@@ -0,0 +1,26 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * This interface defines the callback that a client exports to be notified
+ * of the changes of the auctions it participates in, instead of asking the server for them.
+ * @author Emmeleia Arakleitou
+ */
+public interface AuctionListener extends Remote {
+
+    /**
+     * Called by the server when an auction the client participates in changes
+     * @param event the change
+     * @throws RemoteException ex
+     */
+    void onAuctionEvent(AuctionEvent event) throws RemoteException;
+
+    /**
+     * Called by the server with the changes of the prices since the last call,
+     * at most one change for every auction
+     * @param events the changes
+     * @throws RemoteException ex
+     */
+    void onAuctionEvents(List<AuctionEvent> events) throws RemoteException;
+}
@@ -0,0 +1,200 @@
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class pushes the changes of the auctions to the clients of the front-end server that subscribed.
+ * A client participates in an auction it sells or bid for and is only notified of the changes of those auctions.
+ * The close of an auction is delivered at once. The changes of the price are coalesced: for every client only
+ * the last change of every auction is kept, and the kept changes are delivered together once per interval,
+ * so a client receives at most one update per auction per interval however many bids are made.
+ * The interval is set in milliseconds with the system property auction.notify.interval, the default is 500.
+ * The events are delivered by a single thread, so the callbacks never delay the mutations of the catalogue.
+ * @author Emmeleia Arakleitou
+ */
+public class AuctionNotifier {
+
+    private static final long DEFAULT_INTERVAL = 500;
+    private final ConcurrentHashMap<String,AuctionListener> listeners = new ConcurrentHashMap<>();
+    private final HashMap<String,Set<String>> participants = new HashMap<>();
+    private final HashMap<String,String> highestBidders = new HashMap<>();
+    private HashMap<String,LinkedHashMap<String,AuctionEvent>> pendingEvents = new HashMap<>();
+    private final ScheduledExecutorService delivery = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "auction-notifier");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor of the class that starts the delivery of the coalesced changes
+     */
+    public AuctionNotifier()
+    {
+        long interval = Long.getLong("auction.notify.interval", DEFAULT_INTERVAL);
+        this.delivery.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Subscribes a client to the changes of the auctions it participates in
+     * @param clientID ID of the client
+     * @param listener the callback of the client
+     */
+    public void subscribe(String clientID, AuctionListener listener)
+    {
+        this.listeners.put(clientID, listener);
+    }
+
+    /**
+     * Stops the notifications of a client
+     * @param clientID ID of the client
+     */
+    public void unsubscribe(String clientID)
+    {
+        this.listeners.remove(clientID);
+    }
+
+    /**
+     * Records that a client participates in an auction
+     * @param auctionID ID of the auction
+     * @param clientID ID of the client
+     */
+    public synchronized void participate(String auctionID, String clientID)
+    {
+        if(auctionID == null || clientID == null || clientID.trim().isEmpty())
+            return;
+        Set<String> clients = this.participants.get(auctionID);
+        if(clients == null)
+        {
+            clients = new HashSet<>();
+            this.participants.put(auctionID, clients);
+        }
+        clients.add(clientID);
+    }
+
+    /**
+     * Records the seller and the highest bidder of an auction as participants
+     * @param auction the auction
+     */
+    public synchronized void participate(Auction auction)
+    {
+        participate(auction.getAuctionID(), auction.getSellerID());
+        participate(auction.getAuctionID(), auction.getHighestBidderID());
+        this.highestBidders.put(auction.getAuctionID(), auction.getHighestBidderID());
+    }
+
+    /**
+     * Records an accepted bid. The previous highest bidder is outbid and the other participants
+     * are told the new price, both at the next delivery.
+     * @param auctionID ID of the auction
+     * @param price the accepted bid in minor units
+     * @param bidderID ID of the bidder
+     */
+    public synchronized void bidAccepted(String auctionID, long price, String bidderID)
+    {
+        participate(auctionID, bidderID);
+        String outbidID = this.highestBidders.put(auctionID, bidderID);
+
+        //the bidder knows the price, a change it has not received yet is out of date.
+        LinkedHashMap<String,AuctionEvent> bidderEvents = this.pendingEvents.get(bidderID);
+        if(bidderEvents != null)
+            bidderEvents.remove(auctionID);
+
+        Set<String> clients = this.participants.get(auctionID);
+        if(clients == null)
+            return;
+        for(String clientID : clients)
+        {
+            if(clientID.equals(bidderID) || !this.listeners.containsKey(clientID))
+                continue;
+            LinkedHashMap<String,AuctionEvent> events = this.pendingEvents.get(clientID);
+            if(events == null)
+            {
+                events = new LinkedHashMap<>();
+                this.pendingEvents.put(clientID, events);
+            }
+            //a client that was outbid and has not bid again is still outbid.
+            AuctionEvent previous = events.get(auctionID);
+            boolean outbid = clientID.equals(outbidID)
+                    || (previous != null && previous.getType() == AuctionEvent.Type.OUTBID);
+            events.put(auctionID, AuctionEvent.priceChanged(outbid ? AuctionEvent.Type.OUTBID : AuctionEvent.Type.PRICE_CHANGED,
+                    auctionID, price, bidderID));
+        }
+    }
+
+    /**
+     * Notifies the participants of an auction that was closed and forgets the participants.
+     * The changes of the price of the auction that were not delivered are dropped.
+     * @param auction the closed auction
+     */
+    public void closed(Auction auction)
+    {
+        Set<String> clients;
+        synchronized (this)
+        {
+            clients = this.participants.remove(auction.getAuctionID());
+            this.highestBidders.remove(auction.getAuctionID());
+            for(Map<String,AuctionEvent> events : this.pendingEvents.values())
+                events.remove(auction.getAuctionID());
+        }
+        if(clients == null)
+            return;
+        final AuctionEvent event = AuctionEvent.closed(auction);
+        for(final String clientID : clients)
+        {
+            final AuctionListener listener = this.listeners.get(clientID);
+            if(listener != null)
+                this.delivery.execute(() -> {
+                    try {
+                        listener.onAuctionEvent(event);
+                    } catch (RemoteException e) {
+                        failed(clientID, listener);
+                    }
+                });
+        }
+    }
+
+    /**
+     * Delivers the coalesced changes of the price, with one call for every client.
+     */
+    private void flush()
+    {
+        HashMap<String,LinkedHashMap<String,AuctionEvent>> events;
+        synchronized (this)
+        {
+            if(this.pendingEvents.isEmpty())
+                return;
+            events = this.pendingEvents;
+            this.pendingEvents = new HashMap<>();
+        }
+        for(Map.Entry<String,LinkedHashMap<String,AuctionEvent>> entry : events.entrySet())
+        {
+            AuctionListener listener = this.listeners.get(entry.getKey());
+            if(listener == null || entry.getValue().isEmpty())
+                continue;
+            try {
+                listener.onAuctionEvents(new ArrayList<>(entry.getValue().values()));
+            } catch (RemoteException e) {
+                failed(entry.getKey(), listener);
+            }
+        }
+    }
+
+    /**
+     * Unsubscribes a client whose callback failed
+     * @param clientID ID of the client
+     * @param listener the callback that failed
+     */
+    private void failed(String clientID, AuctionListener listener)
+    {
+        System.out.println("[SERVER] Client " + clientID + " can not be notified, the subscription is removed");
+        this.listeners.remove(clientID, listener);
+    }
+}
@@ -0,0 +1,108 @@
+import java.util.Comparator;
+
+/**
+ * The orders in which a page of auctions can be listed. Auctions with the same sort key
+ * are ordered by their ID, so every order is total and a page can continue after the last auction
+ * of the previous page.
+ * @author Emmeleia Arakleitou
+ */
+public enum AuctionOrder {
+
+    /**
+     * By auction ID
+     */
+    AUCTION_ID,
+
+    /**
+     * By current price, the lowest first. The current price is the highest bid,
+     * or the starting price if there are no bids.
+     */
+    PRICE_LOW_TO_HIGH,
+
+    /**
+     * By current price, the highest first.
+     */
+    PRICE_HIGH_TO_LOW;
+
+    /**
+     * Returns the comparator that sorts the auctions in this order
+     * @return Comparator
+     */
+    public Comparator<Auction> comparator()
+    {
+        Comparator<Auction> byID = (a, b) -> compareIDs(a.getAuctionID(), b.getAuctionID());
+        switch (this)
+        {
+            case PRICE_LOW_TO_HIGH:
+                return Comparator.comparingLong(AuctionOrder::currentPrice).thenComparing(byID);
+            case PRICE_HIGH_TO_LOW:
+                return Comparator.comparingLong(AuctionOrder::currentPrice).reversed().thenComparing(byID);
+            default:
+                return byID;
+        }
+    }
+
+    /**
+     * Returns the cursor that points after an auction, which is its sort key and ID.
+     * The price of the cursor is in minor units.
+     * @param auction the last auction of a page
+     * @return String
+     */
+    public String cursorOf(Auction auction)
+    {
+        if(this == AUCTION_ID)
+            return auction.getAuctionID();
+        return currentPrice(auction) + ":" + auction.getAuctionID();
+    }
+
+    /**
+     * Checks if an auction comes after the cursor in this order
+     * @param auction the auction to check
+     * @param cursor the cursor returned with the previous page
+     * @return true if the auction belongs to a following page
+     * @throws IllegalArgumentException if the cursor was not created by this order
+     */
+    public boolean isAfter(Auction auction, String cursor)
+    {
+        if(this == AUCTION_ID)
+            return compareIDs(auction.getAuctionID(), cursor) > 0;
+
+        int separator = cursor.indexOf(':');
+        if(separator < 0)
+            throw new IllegalArgumentException("Invalid cursor " + cursor);
+        int order;
+        try {
+            order = Long.compare(currentPrice(auction), Long.parseLong(cursor.substring(0, separator)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor);
+        }
+        if(this == PRICE_HIGH_TO_LOW)
+            order = -order;
+        if(order == 0)
+            order = compareIDs(auction.getAuctionID(), cursor.substring(separator + 1));
+        return order > 0;
+    }
+
+    /**
+     * Returns the current price of an auction, the highest bid or the starting price if there are no bids
+     * @param auction the auction
+     * @return the price in minor units
+     */
+    static long currentPrice(Auction auction)
+    {
+        return Math.max(auction.getHighestBidMinor(), auction.getStartingPriceMinor());
+    }
+
+    /**
+     * Compares two IDs so that numerical IDs are in numerical order
+     * @param a an ID
+     * @param b an other ID
+     * @return a negative number, zero, or a positive number if a is before, equal to or after b
+     */
+    static int compareIDs(String a, String b)
+    {
+        if(a.length() != b.length())
+            return Integer.compare(a.length(), b.length());
+        return a.compareTo(b);
+    }
+}
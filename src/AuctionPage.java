@@ -0,0 +1,247 @@
+import org.jgroups.util.SizeStreamable;
+import org.jgroups.util.Bits;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.io.*;
+
+/**
+ * A page of the active auctions, returned instead of the whole catalogue.
+ * The page holds at most the requested number of auctions and the cursor
+ * that is passed to get the next page.
+ * @author Emmeleia Arakleitou
+ */
+public class AuctionPage implements SizeStreamable, Externalizable {
+
+    public static final int MAX_PAGE_SIZE = 100;
+    private ArrayList<Auction> auctions;
+    private String nextCursor;
+
+    /**
+     * Constructor with no parameters used to decode a page from its binary form.
+     */
+    public AuctionPage()
+    {
+        this.auctions = new ArrayList<>();
+    }
+
+    /**
+     * Constructor of the class
+     * @param auctions the auctions of the page in order
+     * @param nextCursor the cursor of the next page, null if this is the last page
+     */
+    public AuctionPage(ArrayList<Auction> auctions, String nextCursor)
+    {
+        this.auctions = auctions;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Selects a page of auctions. Only the auctions of the page are kept while the auctions are scanned,
+     * so the page is found without sorting the whole catalogue.
+     * @param candidates the auctions to select from
+     * @param pageSize the maximum number of auctions of the page, at most MAX_PAGE_SIZE
+     * @param cursor the cursor returned with the previous page or null for the first page
+     * @param sellerID only the auctions of this seller are selected, or all of them if null
+     * @param order the order of the auctions
+     * @return AuctionPage
+     * @throws IllegalArgumentException if the page size is not positive or the cursor is not valid
+     */
+    public static AuctionPage select(Collection<Auction> candidates, int pageSize, String cursor, String sellerID, AuctionOrder order)
+    {
+        if(pageSize <= 0)
+            throw new IllegalArgumentException("The page size must be greater than 0");
+        pageSize = Math.min(pageSize, MAX_PAGE_SIZE);
+        Comparator<Auction> comparator = order.comparator();
+
+        //one auction more than the page is kept to know if there is a next page.
+        PriorityQueue<Auction> selected = new PriorityQueue<>(pageSize + 2, comparator.reversed());
+        for(Auction auction : candidates)
+        {
+            if(sellerID != null && !sellerID.equals(auction.getSellerID()))
+                continue;
+            if(cursor != null && !order.isAfter(auction, cursor))
+                continue;
+            selected.offer(auction);
+            if(selected.size() > pageSize + 1)
+                selected.poll();
+        }
+
+        ArrayList<Auction> auctions = new ArrayList<>(selected);
+        Collections.sort(auctions, comparator);
+        String nextCursor = null;
+        if(auctions.size() > pageSize)
+        {
+            auctions.remove(pageSize);
+            nextCursor = order.cursorOf(auctions.get(pageSize - 1));
+        }
+        return new AuctionPage(auctions, nextCursor);
+    }
+
+    /**
+     * Merges the pages of the same request read from every shard into one page. The shards hold different auctions
+     * and every page is in order, so the pages are merged by taking the first auction of the pages one after the other,
+     * until the page is full. The auctions after the page are never compared.
+     * @param pages the page of every shard
+     * @param pageSize the maximum number of auctions of the page, at most MAX_PAGE_SIZE
+     * @param order the order of the auctions
+     * @return AuctionPage
+     */
+    public static AuctionPage merge(List<AuctionPage> pages, int pageSize, AuctionOrder order)
+    {
+        if(pages.size() == 1)
+            return pages.get(0);
+        pageSize = Math.min(pageSize, MAX_PAGE_SIZE);
+        Comparator<Auction> comparator = order.comparator();
+
+        //the next auction of every page that is not merged yet, ordered by that auction.
+        PriorityQueue<PageCursor> heads = new PriorityQueue<>(pages.size(), (a, b) -> comparator.compare(a.head(), b.head()));
+        boolean more = false;
+        for(AuctionPage page : pages)
+        {
+            if(!page.getAuctions().isEmpty())
+                heads.offer(new PageCursor(page.getAuctions()));
+            more |= page.hasNextPage();
+        }
+
+        ArrayList<Auction> auctions = new ArrayList<>(pageSize);
+        while (auctions.size() < pageSize && !heads.isEmpty())
+        {
+            PageCursor next = heads.poll();
+            auctions.add(next.head());
+            if(next.advance())
+                heads.offer(next);
+        }
+        more |= !heads.isEmpty();
+        String nextCursor = more && !auctions.isEmpty() ? order.cursorOf(auctions.get(auctions.size() - 1)) : null;
+        return new AuctionPage(auctions, nextCursor);
+    }
+
+    /**
+     * Accessor for the auctions of the page
+     * @return the auctions in the requested order
+     */
+    public List<Auction> getAuctions() {
+        return auctions;
+    }
+
+    /**
+     * Accessor for the cursor of the next page
+     * @return the cursor, or null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Checks if there are more auctions after this page
+     * @return true if there is a next page
+     */
+    public boolean hasNextPage() {
+        return nextCursor != null;
+    }
+
+    /**
+     * Writes the page in the binary format
+     * @param out the output to write to
+     * @throws IOException
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException
+    {
+        WireFormat.writeVersion(out);
+        Bits.writeString(nextCursor, out);
+        out.writeInt(auctions.size());
+        for(Auction auction : auctions)
+            auction.writeTo(out);
+    }
+
+    /**
+     * Reads the page from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    @Override
+    public void readFrom(DataInput in) throws IOException
+    {
+        WireFormat.readVersion(in);
+        nextCursor = Bits.readString(in);
+        int size = in.readInt();
+        auctions = new ArrayList<>(size);
+        for(int i = 0; i < size; i++)
+        {
+            Auction auction = new Auction();
+            auction.readFrom(in);
+            auctions.add(auction);
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the binary format
+     * @return int
+     */
+    @Override
+    public int size()
+    {
+        int size = 1 + Bits.size(nextCursor) + 4;
+        for(Auction auction : auctions)
+            size += auction.size();
+        return size;
+    }
+
+    /**
+     * Java serialization of the page, used by the cluster calls and RMI, in the binary format
+     * @param out the output to write to
+     * @throws IOException
+     */
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException
+    {
+        writeTo(out);
+    }
+
+    /**
+     * Java deserialization of the page from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    @Override
+    public void readExternal(ObjectInput in) throws IOException
+    {
+        readFrom(in);
+    }
+
+    /**
+     * The position of the merge in the auctions of a page
+     */
+    private static class PageCursor {
+        private final List<Auction> auctions;
+        private int index;
+
+        PageCursor(List<Auction> auctions)
+        {
+            this.auctions = auctions;
+        }
+
+        /**
+         * Returns the next auction of the page to merge
+         * @return Auction
+         */
+        Auction head()
+        {
+            return auctions.get(index);
+        }
+
+        /**
+         * Moves to the next auction of the page
+         * @return true if the page has more auctions to merge
+         */
+        boolean advance()
+        {
+            return ++index < auctions.size();
+        }
+    }
+}
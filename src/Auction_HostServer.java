@@ -1,25 +1,37 @@
 import java.rmi.registry.LocateRegistry;
+import java.rmi.server.ExportException;
 import java.rmi.Naming;
 
 /**
  * This class provides a server that will host the remote object services.
+ * Several front-end servers can run against the same cluster, each bound under its own name,
+ * which is the first argument or the system property auction.frontend.name, AuctioningServer by default.
+ * The clients find them with the system property auction.frontends.
  * @author Emmeleia Arakleitou.
  */
 public class Auction_HostServer {
 
+    public static final String DEFAULT_NAME = "AuctioningServer";
+
     /**
      * Constructor of the class. Creates an instance of the remote object
      * and binds it to the naming service-RMIRegistry.
+     * @param name the name the remote object is bound under
      */
-    public Auction_HostServer(){
+    public Auction_HostServer(String name){
 
-        String urlName = "rmi://localhost/AuctioningServer";
+        String urlName = "rmi://localhost/" + name;
         try {
             //Create an instance of the remote UnicastObject and locate
             //the Registry to bind the the object to the remote naming service
             Server_Interface auction = new Auction_RemoteService();
-            LocateRegistry.createRegistry(1090);
+            try {
+                LocateRegistry.createRegistry(1090);
+            } catch (ExportException e) {
+                System.out.println("[SERVER] The registry was already created by an other front-end server");
+            }
             Naming.rebind(urlName,auction);
+            System.out.println("[SERVER] Bound to " + urlName);
         }catch (Exception e)
         {
             e.printStackTrace();
@@ -31,6 +43,6 @@ public class Auction_HostServer {
      */
     public static void main (String[] args)
     {
-        new Auction_HostServer();
+        new Auction_HostServer(args.length > 0 ? args[0] : System.getProperty("auction.frontend.name", DEFAULT_NAME));
     }
 }
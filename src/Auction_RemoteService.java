@@ -1,17 +1,38 @@
+import org.jgroups.Address;
 import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.blocks.MethodCall;
 import org.jgroups.blocks.RequestOptions;
 import org.jgroups.blocks.ResponseMode;
 import org.jgroups.blocks.RpcDispatcher;
+import org.jgroups.util.FutureListener;
+import org.jgroups.util.NotifyingFuture;
 import org.jgroups.util.RspList;
 import java.rmi.server.UnicastRemoteObject;
 import java.rmi.RemoteException;
 import java.math.BigDecimal;
 import java.security.Key;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * This class represents the front-end Server of the auctioning system
  * that connect all the cluster members to the channel to execute the requests made on the server.
+ * The requests of different clients are executed in parallel. Reads are sent as out of band messages,
+ * which the replicas handle concurrently, while writes are sent as regular messages, which the primary
+ * handles in the order they were sent. Depending on the configured consistency level a read is
+ * served by a single replica, so the cost of a read does not grow with the size of the cluster.
+ * The listings of auctions are served from a catalogue cache that follows the mutations of the primary,
+ * unless the reads must be served by the primary.
+ * The calls about an auction are sent to the replicas of the shard of the auction, the calls about the clients
+ * to the replicas of Shards.CLIENT_SHARD and the listings are collected from every shard.
  * @author Emmeleia Araklitou
  */
 public class Auction_RemoteService extends UnicastRemoteObject implements Server_Interface{
@@ -20,7 +41,12 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
     private static final int TIMEOUT = 1000;
     private JChannel channel;
     private RpcDispatcher dispatcher;
-    private RequestOptions requestOptions;
+    private RequestOptions requestOptions, readOptions, firstReadOptions;
+    private final ReadConsistency readConsistency = ReadConsistency.configured();
+    private final AtomicInteger nextReplica = new AtomicInteger(), nextShard = new AtomicInteger();
+    private final BidPipeline[] bidPipelines = new BidPipeline[Shards.COUNT];
+    private final AuctionNotifier notifier = new AuctionNotifier();
+    private final CatalogueCache[] catalogueCaches = new CatalogueCache[Shards.COUNT];
 
     /**
      * Constructor of the class that calls the constructor of the superClass
@@ -29,6 +55,8 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
      */
     public Auction_RemoteService() throws RemoteException {
         super();
+        for(int shard = 0; shard < Shards.COUNT; shard++)
+            this.catalogueCaches[shard] = new CatalogueCache(this.notifier, shard);
         setUpCluster();
     }
 
@@ -41,15 +69,165 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
         try{
             this.channel = new JChannel();
             this.requestOptions = new RequestOptions(ResponseMode.GET_ALL, TIMEOUT);
+            this.readOptions = new RequestOptions(ResponseMode.GET_ALL, TIMEOUT).setFlags(Message.Flag.OOB);
+            this.firstReadOptions = new RequestOptions(ResponseMode.GET_FIRST, TIMEOUT).setFlags(Message.Flag.OOB);
             this.channel.setDiscardOwnMessages(true);
             this.dispatcher = new RpcDispatcher(this.channel,new Auction_Server_Replica());
             this.channel.connect(CLUSTER_NAME);
+            for(int shard = 0; shard < Shards.COUNT; shard++)
+            {
+                this.bidPipelines[shard] = new BidPipeline(this, shard);
+                this.catalogueCaches[shard].start();
+            }
         }catch (Exception e)
         {
             System.out.println("[SERVER] Failed to connect to cluster!!");
         }
     }
 
+    /**
+     * Invokes a write method on the primary replica of a shard, which applies the change
+     * and replicates it to the rest of the replicas of the shard.
+     * @param shard the shard of the change
+     * @param methodName the name of the method to invoke
+     * @param args the arguments of the method
+     * @param types the types of the arguments
+     * @return the response of the primary
+     * @throws Exception if there is no replica or the call failed
+     */
+    private <T> T callPrimary(int shard, String methodName, Object[] args, Class[] types) throws Exception
+    {
+        NotifyingFuture<T> future = callPrimary(shard,methodName,args,types,null);
+        return future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Invokes a write method on the primary of a shard without waiting for the response.
+     * Writes are sent as regular messages, so the primary executes them in the order they were sent.
+     * @param shard the shard of the change
+     * @param methodName the name of the method to invoke
+     * @param args the arguments of the method
+     * @param types the types of the arguments
+     * @param listener notified with the response, can be null
+     * @return the future response of the primary
+     * @throws Exception if there is no replica or the call could not be sent
+     */
+    private <T> NotifyingFuture<T> callPrimary(int shard, String methodName, Object[] args, Class[] types, FutureListener<T> listener) throws Exception
+    {
+        Address primary = Auction_Server_Replica.primaryOf(this.channel.getView(), shard);
+        if(primary == null)
+            throw new IllegalStateException("[SERVER] There are no replicas of shard " + shard + " in the cluster");
+        return this.dispatcher.callRemoteMethodWithFuture(primary,new MethodCall(methodName,args,types),this.requestOptions,listener);
+    }
+
+    /**
+     * Invokes a read method on the replicas of a shard chosen by the configured consistency level.
+     * @param shard the shard of the data
+     * @param methodName the name of the method to invoke
+     * @param args the arguments of the method
+     * @param types the types of the arguments
+     * @return the response of one of the replicas
+     * @throws Exception if there is no replica or the call failed
+     */
+    private <T> T read(int shard, String methodName, Object[] args, Class[] types) throws Exception
+    {
+        CompletableFuture<T> response = readAsync(shard,methodName,args,types);
+        return response.get(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Invokes a read method on the replicas of a shard chosen by the configured consistency level,
+     * without waiting for the response, so the reads of several shards are sent at once.
+     * @param shard the shard of the data
+     * @param methodName the name of the method to invoke
+     * @param args the arguments of the method
+     * @param types the types of the arguments
+     * @return the future response of one of the replicas
+     * @throws Exception if there is no replica or the call could not be sent
+     */
+    private <T> CompletableFuture<T> readAsync(int shard, String methodName, Object[] args, Class[] types) throws Exception
+    {
+        MethodCall call = new MethodCall(methodName,args,types);
+        List<Address> replicas = Auction_Server_Replica.replicasOf(this.channel.getView(), shard);
+        if(replicas.isEmpty())
+            throw new IllegalStateException("[SERVER] There are no replicas of shard " + shard + " in the cluster");
+
+        Address target;
+        switch (this.readConsistency)
+        {
+            case PRIMARY:
+                target = replicas.get(0);
+                break;
+            case ONE:
+                target = replicas.get(Math.floorMod(this.nextReplica.getAndIncrement(), replicas.size()));
+                break;
+            default:
+                //FIRST and ALL are sent to every replica
+                RequestOptions options = this.readConsistency == ReadConsistency.FIRST ? this.firstReadOptions : this.readOptions;
+                CompletableFuture<T> result = new CompletableFuture<>();
+                this.dispatcher.callRemoteMethodsWithFuture(replicas,call,options,(Future<RspList<T>> responses) -> {
+                    try {
+                        T last = null;
+                        for(T response : responses.get().getResults())
+                            last = response;
+                        result.complete(last);
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+                return result;
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        this.dispatcher.callRemoteMethodWithFuture(target,call,this.readOptions,(Future<T> response) -> {
+            try {
+                result.complete(response.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Invokes a read method on every shard at once and waits for all the responses.
+     * The shards whose catalogue cache can serve the read are answered locally.
+     * @param cached reads the result from the catalogue cache of a shard, or null if the cache can not serve the read
+     * @param methodName the name of the method to invoke
+     * @param args the arguments of the method
+     * @param types the types of the arguments
+     * @return the result of every shard
+     * @throws Exception if a shard has no replica or its call failed
+     */
+    private <T> List<T> readAllShards(Function<CatalogueCache,T> cached, String methodName, Object[] args, Class[] types) throws Exception
+    {
+        List<CompletableFuture<T>> responses = new ArrayList<>(Shards.COUNT);
+        for(int shard = 0; shard < Shards.COUNT; shard++)
+        {
+            if(cached != null && useCatalogueCache(shard))
+                responses.add(CompletableFuture.completedFuture(cached.apply(this.catalogueCaches[shard])));
+            else
+                responses.add(readAsync(shard,methodName,args,types));
+        }
+        //the shards answer in parallel, so the whole read waits for one timeout at most.
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        List<T> results = new ArrayList<>(Shards.COUNT);
+        for(CompletableFuture<T> response : responses)
+            results.add(response.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+        return results;
+    }
+
+    /**
+     * Checks if the reads of a shard can be served from its catalogue cache. The cache is a backup of the state,
+     * so it is not used when the reads must be served by the primary or collected from every replica.
+     * @param shard the shard
+     * @return true if the catalogue cache serves the listings
+     */
+    private boolean useCatalogueCache(int shard)
+    {
+        return (this.readConsistency == ReadConsistency.ONE || this.readConsistency == ReadConsistency.FIRST)
+                && this.catalogueCaches[shard].isReady();
+    }
+
     /**
      * This method is used to invoke the method on the cluster member to create an action an new Auction.
      * @param itemDesc A small description of the item to sold
@@ -58,16 +236,39 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
      * @return auctionID that will be used to bid for that specific item
      */
     @Override
-    public synchronized String createNewAuction(String itemDesc, BigDecimal reservedPrice, BigDecimal startingPrice,String sellerID){
+    public String createNewAuction(String itemDesc, BigDecimal reservedPrice, BigDecimal startingPrice,String sellerID){
+        return createNewAuction(itemDesc,reservedPrice,startingPrice,sellerID,0);
+    }
+
+    /**
+     * This method is used to invoke the method on the cluster member to create an auction
+     * that is closed automatically at the end of a duration. The new auctions are spread over the shards in turn.
+     * @param itemDesc A small description of the item to sold
+     * @param startingPrice The starting price of the item
+     * @param reservedPrice The minimum accepted price for an item
+     * @param duration the time in milliseconds until the auction is closed, 0 if only the seller closes it, at most Auction.MAX_DURATION
+     * @return auctionID that will be used to bid for that specific item, or null if the auction is rejected
+     */
+    @Override
+    public String createNewAuction(String itemDesc, BigDecimal reservedPrice, BigDecimal startingPrice,String sellerID,long duration){
             String auctionID=null;
+            if(duration < 0 || duration > Auction.MAX_DURATION)
+            {
+                System.out.println("[SERVER] Rejected an auction whose duration is not between 0 and " + Auction.MAX_DURATION + " milliseconds");
+                return null;
+            }
+            try {
+                Money.toMinor(reservedPrice);
+                Money.toMinor(startingPrice);
+            } catch (ArithmeticException e) {
+                System.out.println("[SERVER] Rejected an auction whose prices have more than " + Money.SCALE + " decimal places");
+                return null;
+            }
             try{
-                RspList responses = this.dispatcher.callRemoteMethods(null,
-                                                                "createAction",
-                                                                new Object[]{itemDesc,reservedPrice,startingPrice,sellerID},
-                                                                new Class[]{String.class,BigDecimal.class,BigDecimal.class,String.class},
-                                                                this.requestOptions);
-                for(Object response:responses.getResults())
-                    auctionID = (String)response;
+                int shard = Math.floorMod(this.nextShard.getAndIncrement(), Shards.COUNT);
+                auctionID = callPrimary(shard,"createAction",
+                                        new Object[]{itemDesc,reservedPrice,startingPrice,sellerID,duration},
+                                        new Class[]{String.class,BigDecimal.class,BigDecimal.class,String.class,long.class});
                 return auctionID;
             }catch (Exception e)
             {
@@ -82,16 +283,15 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
      * @return true if the auction exists otherwise it returns false
      */
     @Override
-    public synchronized int closeAuction(String auctionID, String sellerID){
+    public int closeAuction(String auctionID, String sellerID){
         int status =-1;
         try {
-            RspList responses = this.dispatcher.callRemoteMethods(null,
-                                                    "closeAuction1",
-                                                                new Object[]{auctionID,sellerID},
-                                                                new Class[]{String.class,String.class},
-                                                                this.requestOptions);
-            for(Object response:responses.getResults())
-                status = (int) response;
+            //the bids already made must reach the primary before the auction is closed.
+            int shard = Shards.shardOf(auctionID);
+            this.bidPipelines[shard].flush();
+            status = (int) callPrimary(shard,"closeAuction1",
+                                        new Object[]{auctionID,sellerID},
+                                        new Class[]{String.class,String.class});
             return status;
         }catch(Exception e)
         {
@@ -106,16 +306,12 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
      * @param client Instance of the object client
      * @return true if ID in use false if ID available
      */
-    public synchronized boolean validateClientID(String clientID, Client client){
+    public boolean validateClientID(String clientID, Client client){
         boolean status = false;
         try {
-            RspList responses = this.dispatcher.callRemoteMethods(null,
-                    "validateClientID1",
+            status = (boolean) callPrimary(Shards.CLIENT_SHARD,"validateClientID1",
                     new Object[]{clientID,client},
-                    new Class[]{String.class,Client.class},
-                    this.requestOptions);
-            for(Object response:responses.getResults())
-                status = (boolean) response;
+                    new Class[]{String.class,Client.class});
             return status;
         }catch(Exception e)
         {
@@ -125,23 +321,52 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
     }
 
     /**
-     * Invokes method to check if the ID is associated with an entry in the HashMap
+     * Calls the method of the primary that registers a new client and gives it a unique ID
+     * @param client Instance of the object client
+     * @return the ID of the client, or null if the cluster could not be reached
+     */
+    @Override
+    public String registerClient(Client client){
+        try {
+            return callPrimary(Shards.CLIENT_SHARD,"registerClient1",
+                    new Object[]{client},
+                    new Class[]{Client.class});
+        }catch(Exception e)
+        {
+            System.out.println("[SERVER] Failed to connect to cluster!!");
+        }
+        return null;
+    }
+
+    /**
+     * Checks if the ID belongs to an active auction. The map sent by the client is not used.
      * @param auctionID ID of the auction
      * @param activeAuctions HashMap with all the active auctions
      * @return true if auction entry exists otherwise returns false
+     * @deprecated use auctionExists
      */
     @Override
-    public synchronized boolean validateAuctionID(String auctionID, HashMap<String,Auction> activeAuctions){
+    @Deprecated
+    public boolean validateAuctionID(String auctionID, HashMap<String,Auction> activeAuctions){
+        return auctionExists(auctionID);
+    }
 
+    /**
+     * Checks if the ID belongs to an active auction. Answered by the catalogue cache
+     * without a call to the cluster, or by one of the replicas.
+     * @param auctionID ID of the auction
+     * @return true if the auction is active otherwise returns false
+     */
+    @Override
+    public boolean auctionExists(String auctionID){
+        int shard = Shards.shardOf(auctionID);
+        if(useCatalogueCache(shard))
+            return this.catalogueCaches[shard].auctionExists(auctionID);
         boolean status = false;
         try {
-            RspList responses = this.dispatcher.callRemoteMethods(null,
-                    "validateAuctionID1",
-                    new Object[]{auctionID,activeAuctions},
-                    new Class[]{String.class, HashMap.class},
-                    this.requestOptions);
-            for(Object response:responses.getResults())
-                status = (boolean) response;
+            status = read(shard,"auctionExists1",
+                    new Object[]{auctionID},
+                    new Class[]{String.class});
             return status;
         }catch(Exception e)
         {
@@ -151,7 +376,55 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
     }
 
     /**
-     * Takes a input a price and invokes metheod to check if the bid is greater than the currentHighest bid
+     * Returns an active auction from the catalogue cache or from one of the replicas
+     * @param auctionID ID of the auction
+     * @return the auction, or null if there is no active auction with that ID
+     */
+    @Override
+    public Auction getActiveAuction(String auctionID){
+        int shard = Shards.shardOf(auctionID);
+        if(useCatalogueCache(shard))
+            return this.catalogueCaches[shard].getActiveAuction(auctionID);
+        try {
+            return read(shard,"getActiveAuction1",
+                    new Object[]{auctionID},
+                    new Class[]{String.class});
+        }catch(Exception e)
+        {
+            System.out.println("[SERVER] Failed to connect to cluster!!");
+        }
+        return null;
+    }
+
+    /**
+     * Returns the accepted bids of an active or closed auction, in the order they were accepted.
+     * The history of an auction that is not in the catalogue cache is read from a replica, which has the archive.
+     * @param auctionID ID of the auction
+     * @return the bid history, or null if no bid was accepted for that auction
+     */
+    @Override
+    public BidHistory getBidHistory(String auctionID){
+        int shard = Shards.shardOf(auctionID);
+        if(useCatalogueCache(shard))
+        {
+            BidHistory history = this.catalogueCaches[shard].getBidHistory(auctionID);
+            if(history != null || this.catalogueCaches[shard].holdsAuction(auctionID))
+                return history;
+        }
+        try {
+            return read(shard,"getBidHistory1",
+                    new Object[]{auctionID},
+                    new Class[]{String.class});
+        }catch(Exception e)
+        {
+            System.out.println("[SERVER] Failed to connect to cluster!!");
+        }
+        return null;
+    }
+
+    /**
+     * Takes a input a price and passes it to the bid pipeline, which sends it to the primary
+     * together with the other waiting bids to check if the bid is greater than the currentHighest bid
      * and change the auction values.
      * @param price User Bid
      * @param auctionID ID of the auction
@@ -159,42 +432,124 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
      * @return a message to indicate whether the bid is accepted
      */
     @Override
-    public synchronized String bidFromItem(BigDecimal price, String auctionID,String bidderID) throws RemoteException {
-        String msg = null;
+    public String bidFromItem(BigDecimal price, String auctionID,String bidderID) throws RemoteException {
+        Bid bid;
+        try {
+            bid = new Bid(price,auctionID,bidderID);
+        } catch (ArithmeticException e) {
+            return "Your bid has been rejected because the price has more than " + Money.SCALE + " decimal places.";
+        }
         try {
-            RspList responses = this.dispatcher.callRemoteMethods(null,
-                    "bidFromItem1",
-                    new Object[]{price,auctionID,bidderID},
-                    new Class[]{BigDecimal.class, String.class,String.class},
-                    this.requestOptions);
-            for(Object response:responses.getResults())
-                msg = (String) response;
-            return msg;
+            return this.bidPipelines[Shards.shardOf(auctionID)].submit(bid).get();
         }catch(Exception e)
         {
             System.out.println("[SERVER] Failed to connect to cluster!!");
         }
-        return msg;
+        return null;
+    }
+
+    /**
+     * Passes a list of bids to the bid pipelines of their shards at once, so they reach the primaries in a few batches
+     * instead of one call each.
+     * @param bids the bids, each with the auction ID, the price and the bidder ID
+     * @return a message for every bid, in the order of the list, null for a bid that could not be sent
+     */
+    @Override
+    public ArrayList<String> bidFromItems(ArrayList<Bid> bids) throws RemoteException {
+        ArrayList<String> replies = new ArrayList<>(bids.size());
+        try {
+            ArrayList<ArrayList<Bid>> bidsByShard = new ArrayList<>(Shards.COUNT);
+            ArrayList<ArrayList<Integer>> positions = new ArrayList<>(Shards.COUNT);
+            for(int shard = 0; shard < Shards.COUNT; shard++)
+            {
+                bidsByShard.add(new ArrayList<>());
+                positions.add(new ArrayList<>());
+            }
+            for(int i = 0; i < bids.size(); i++)
+            {
+                Bid bid = bids.get(i);
+                int shard = Shards.shardOf(bid.getAuctionID());
+                bidsByShard.get(shard).add(bid);
+                positions.get(shard).add(i);
+            }
+            //the replies are put back in the order of the bids.
+            ArrayList<CompletableFuture<String>> pending = new ArrayList<>(Collections.nCopies(bids.size(), null));
+            for(int shard = 0; shard < Shards.COUNT; shard++)
+            {
+                if(bidsByShard.get(shard).isEmpty())
+                    continue;
+                List<CompletableFuture<String>> shardReplies = this.bidPipelines[shard].submitAll(bidsByShard.get(shard));
+                for(int i = 0; i < shardReplies.size(); i++)
+                    pending.set(positions.get(shard).get(i), shardReplies.get(i));
+            }
+            for(CompletableFuture<String> reply : pending)
+                replies.add(reply.get());
+        }catch(Exception e)
+        {
+            System.out.println("[SERVER] Failed to connect to cluster!!");
+        }
+        return replies;
+    }
+
+    /**
+     * Invokes the method on the primary of a shard that applies a batch of bids in order, without waiting for the response.
+     * Used by the bid pipelines.
+     * @param shard the shard of the auctions of the bids
+     * @param bids the bids to apply
+     * @param listener notified with a message for every bid
+     * @throws Exception if the batch could not be sent
+     */
+    void sendBids(int shard, ArrayList<Bid> bids, FutureListener<ArrayList<String>> listener) throws Exception
+    {
+        callPrimary(shard,"bidFromItems1",
+                new Object[]{bids},
+                new Class[]{ArrayList.class},
+                listener);
+    }
+
+    /**
+     * Subscribes a client to the changes of the auctions it sells or bid for
+     * @param clientID ID of the client
+     * @param listener the callback of the client
+     */
+    @Override
+    public void subscribe(String clientID, AuctionListener listener){
+        this.notifier.subscribe(clientID,listener);
+    }
+
+    /**
+     * Stops the notifications of a client
+     * @param clientID ID of the client
+     */
+    @Override
+    public void unsubscribe(String clientID){
+        this.notifier.unsubscribe(clientID);
     }
 
     /**
      * Invokes method on the on a server on the channel to check if
-     * the highest bid is larger than the reserved price
+     * the highest bid is larger than the reserved price. If the auction is not in the shard of the clients,
+     * the ID of the winner is read from the shard of the auction and the winner from the shard of the clients.
      * @param auctionID ID of the auction
      * @return HighestBidder or null if reserved price is not met
      */
     @Override
-    public synchronized Client announceWinner(String auctionID){
+    public Client announceWinner(String auctionID){
 
         Client client = null;
         try {
-            RspList responses = this.dispatcher.callRemoteMethods(null,
-                    "announceWinner1",
+            int shard = Shards.shardOf(auctionID);
+            if(shard == Shards.CLIENT_SHARD)
+                return read(shard,"announceWinner1",
+                        new Object[]{auctionID},
+                        new Class[]{String.class});
+            String winnerID = read(shard,"getWinnerID1",
                     new Object[]{auctionID},
-                    new Class[]{String.class},
-                    this.requestOptions);
-            for(Object response:responses.getResults())
-                client = (Client) response;
+                    new Class[]{String.class});
+            if(winnerID != null)
+                client = read(Shards.CLIENT_SHARD,"getClient1",
+                        new Object[]{winnerID},
+                        new Class[]{String.class});
             return client;
         }catch(Exception e)
         {
@@ -204,20 +559,20 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
     }
 
     /**
-     * Accessor for activeAuctions
+     * Accessor for activeAuctions, collected from every shard in parallel
      * @return a list of all the current active auctions
      */
     @Override
-    public synchronized HashMap<String,Auction> getActiveAuctions(){
+    public HashMap<String,Auction> getActiveAuctions(){
         HashMap<String,Auction> activeAuctions = new HashMap<>();
         try{
-            RspList responses = this.dispatcher.callRemoteMethods(null,
-                                                                "getActiveAuctions1",
-                                                                    new Object[]{},
-                                                                    new Class[]{},
-                                                                    this.requestOptions);
-            for(Object response:responses.getResults())
-                activeAuctions = (HashMap<String,Auction>)response;
+            List<HashMap<String,Auction>> shards = readAllShards(CatalogueCache::getActiveAuctions,"getActiveAuctions1",
+                    new Object[]{},
+                    new Class[]{});
+            if(shards.size() == 1)
+                return shards.get(0);
+            for(HashMap<String,Auction> auctions : shards)
+                activeAuctions.putAll(auctions);
             return activeAuctions;
         }catch (Exception e)
         {
@@ -227,19 +582,45 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
     }
 
     /**
-     * Accessor for closedAuctions
-     * @return list of all the closed auctions
+     * Returns a page of the active auctions, merged from the pages of every shard. The pages are read
+     * from the catalogue caches or from the cluster in parallel, every shard returns one page at most,
+     * so the memory of a page depends on the page size and the number of shards only.
+     * @param pageSize the maximum number of auctions of the page, at most AuctionPage.MAX_PAGE_SIZE
+     * @param cursor the cursor returned with the previous page or null for the first page
+     * @param sellerID only the auctions of this seller are listed, or all of them if null
+     * @param order the order of the auctions
+     * @return the page and the cursor of the next page
+     */
+    @Override
+    public AuctionPage getActiveAuctionsPage(int pageSize, String cursor, String sellerID, AuctionOrder order){
+        try{
+            List<AuctionPage> pages = readAllShards(cache -> cache.getActiveAuctionsPage(pageSize,cursor,sellerID,order),
+                    "getActiveAuctionsPage1",
+                    new Object[]{pageSize,cursor,sellerID,order},
+                    new Class[]{int.class,String.class,String.class,AuctionOrder.class});
+            return AuctionPage.merge(pages,pageSize,order);
+        }catch (Exception e)
+        {
+            System.out.println("[SERVER] Failed to connect to cluster!!");
+        }
+        return null;
+    }
+
+    /**
+     * Accessor for closedAuctions, collected from every shard in parallel. Only the auctions closed recently are returned,
+     * the ones the replicas moved to their archive are read with getClosedAuction.
+     * @return list of the recently closed auctions
      */
     public HashMap<String, Auction> getClosedAuctions(){
         HashMap<String, Auction> closedAuctions = new HashMap<>();
         try{
-            RspList responses = this.dispatcher.callRemoteMethods(null,
-                    "getClosedAuctions1",
+            List<HashMap<String,Auction>> shards = readAllShards(null,"getClosedAuctions1",
                     new Object[]{},
-                    new Class[]{},
-                    this.requestOptions);
-            for(Object response:responses.getResults())
-                closedAuctions = (HashMap<String,Auction>)response;
+                    new Class[]{});
+            if(shards.size() == 1)
+                return shards.get(0);
+            for(HashMap<String,Auction> auctions : shards)
+                closedAuctions.putAll(auctions);
             return closedAuctions;
         }catch (Exception e)
         {
@@ -248,6 +629,25 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
         return null;
     }
 
+    /**
+     * Returns a closed auction, also if the replicas moved it to their archive.
+     * Always read from the cluster, since the catalogue cache does not hold the archive.
+     * @param auctionID ID of the auction
+     * @return the auction, or null if it is not closed
+     */
+    @Override
+    public Auction getClosedAuction(String auctionID){
+        try {
+            return read(Shards.shardOf(auctionID),"getClosedAuction1",
+                    new Object[]{auctionID},
+                    new Class[]{String.class});
+        }catch(Exception e)
+        {
+            System.out.println("[SERVER] Failed to connect to cluster!!");
+        }
+        return null;
+    }
+
     /**
      * Accessor for registered clients
      * @return
@@ -255,13 +655,9 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
     public HashMap<String,Client> getRegisteredClients(){
         HashMap<String, Client> registeredClients = new HashMap<>();
         try{
-            RspList responses = this.dispatcher.callRemoteMethods(null,
-                    "getRegisteredClients1",
+            registeredClients = read(Shards.CLIENT_SHARD,"getRegisteredClients1",
                     new Object[]{},
-                    new Class[]{},
-                    this.requestOptions);
-            for(Object response:responses.getResults())
-                registeredClients = (HashMap<String,Client>)response;
+                    new Class[]{});
             return registeredClients;
         }catch (Exception e)
         {
@@ -278,14 +674,9 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
     public boolean validateUserName(String userName)
     {
         try{
-            RspList responses = this.dispatcher.callRemoteMethods(null,
-                    "validateUserName1",
+            boolean ans = read(Shards.CLIENT_SHARD,"validateUserName1",
                     new Object[]{userName},
-                    new Class[]{String.class},
-                    this.requestOptions);
-            boolean ans = false;
-            for(Object response:responses.getResults())
-                ans = (boolean)response;
+                    new Class[]{String.class});
             return ans;
         }catch (Exception e)
         {
@@ -296,21 +687,16 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
 
     /**
      * Invokes method to authendicate the server
-     * @param key Name of the file that holds the key
+     * @param key Name of the user whose key is used
      * @param randomNum the chalenge to solve
      * @return
      */
-    public synchronized AuthenticationReply serverAuthentication(String key, int randomNum )
+    public AuthenticationReply serverAuthentication(String key, int randomNum )
     {
         try{
-            RspList responses = this.dispatcher.callRemoteMethods(null,
-                    "serverAuthentication1",
+            AuthenticationReply authenticationReply = read(Shards.CLIENT_SHARD,"serverAuthentication1",
                     new Object[]{key,randomNum},
-                    new Class[]{String.class,int.class},
-                    this.requestOptions);
-            AuthenticationReply authenticationReply = null;
-            for(Object response:responses.getResults())
-                authenticationReply = (AuthenticationReply) response;
+                    new Class[]{String.class,int.class});
             return authenticationReply;
         }catch (Exception e)
         {
@@ -322,7 +708,7 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
     /**
      * Invokes method to authendicate the client
      * @param authenticationReply the random number encypted using the user password from input
-     * @param keyFileName the name of the file to load the key
+     * @param keyFileName the name of the user whose key is used
      * @return
      */
     public Boolean authenticateClint(AuthenticationReply authenticationReply, String keyFileName){
@@ -330,14 +716,9 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
         boolean authenticated = false;
 
         try{
-            RspList responses = this.dispatcher.callRemoteMethods(null,
-                    "authenticateClint1",
+            authenticated = read(Shards.CLIENT_SHARD,"authenticateClint1",
                     new Object[]{authenticationReply,keyFileName},
-                    new Class[]{AuthenticationReply.class,String.class},
-                    this.requestOptions);
-
-            for(Object response:responses.getResults())
-                authenticated = (boolean) response;
+                    new Class[]{AuthenticationReply.class,String.class});
             return authenticated;
         }catch (Exception e)
         {
@@ -348,7 +729,7 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
 
     /**
      * Invokes method to get the secret key for server authentication
-     * @param keyFileName the name of the file that contains the password
+     * @param keyFileName the name of the user
      * @return
      */
     public Key getServerKey(String keyFileName) {
@@ -356,14 +737,9 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
         Key secretKey = null;
 
         try{
-            RspList responses = this.dispatcher.callRemoteMethods(null,
-                    "getServerKey1",
+            secretKey = read(Shards.CLIENT_SHARD,"getServerKey1",
                     new Object[]{keyFileName},
-                    new Class[]{String.class},
-                    this.requestOptions);
-
-            for(Object response:responses.getResults())
-                secretKey = (Key) response;
+                    new Class[]{String.class});
             return secretKey;
         }catch (Exception e)
         {
@@ -381,14 +757,9 @@ public class Auction_RemoteService extends UnicastRemoteObject implements Server
 
         Client client= null;
         try{
-            RspList responses = this.dispatcher.callRemoteMethods(null,
-                    "getClientOnPass1",
+            client = read(Shards.CLIENT_SHARD,"getClientOnPass1",
                     new Object[]{password},
-                    new Class[]{String.class},
-                    this.requestOptions);
-
-            for(Object response:responses.getResults())
-                client = (Client) response;
+                    new Class[]{String.class});
             return client;
         }catch (Exception e)
         {
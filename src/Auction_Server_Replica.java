@@ -4,111 +4,253 @@ import javax.crypto.NoSuchPaddingException;
 import java.security.InvalidKeyException;
 import javax.crypto.BadPaddingException;
 import org.jgroups.blocks.RpcDispatcher;
+import org.jgroups.blocks.RequestOptions;
+import org.jgroups.blocks.ResponseMode;
+import org.jgroups.blocks.Response;
 import javax.crypto.spec.SecretKeySpec;
-import org.jgroups.ReceiverAdapter;
+import org.jgroups.util.ByteArrayDataOutputStream;
+import org.jgroups.util.ByteArrayDataInputStream;
 import org.jgroups.util.Util;
+import org.jgroups.util.UUID;
 import java.math.BigDecimal;
 import org.jgroups.JChannel;
 import javax.crypto.Cipher;
 import org.jgroups.Message;
+import org.jgroups.Address;
 import java.security.Key;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.jgroups.View;
-import java.util.Map;
+import org.jgroups.ReceiverAdapter;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
 import java.io.*;
 
 /**
- * This class represents the claster members that are serving the requests coming from the server
+ * This class represents the claster members that are serving the requests coming from the server.
+ * Every replica belongs to a shard and keeps the auctions of that shard only, see Shards.
  * @author Emmeleia Arakleitou
  */
-public class Auction_Server_Replica extends ReceiverAdapter{
+public class Auction_Server_Replica extends StateSubscriber{
 
-    private HashMap<String,Client> registeredClients = new HashMap<>();
-    private HashMap<String,Auction> closedAuctions = new HashMap<>();
-    private HashMap<String,Auction> activeAuctions = new HashMap<>();
-    private static final String SECOND_CLUSTER_NAME = "MY_SECOND_CLUSTER";
     private static final String CLUSTER_NAME = "MY_CLUSTER";
-    private final State myState  = new State();
-    private static final int TIMEOUT = 1000;
-    private JChannel channelA, channelB;
+    static final String REPLICA_NAME_PREFIX = "replica-";
+    private JChannel channelA;
+    private final KeyCache keyCache = KeyCache.configured();
+    private CredentialStore credentialStore;
+    //closed auctions older than this, in milliseconds, are moved to the archive. Set with auction.archive.age.
+    private static final long ARCHIVE_AGE = Long.getLong("auction.archive.age", 60 * 60 * 1000L);
+    private static final long ARCHIVE_CHECK_INTERVAL = Math.max(1000, Math.min(ARCHIVE_AGE, 60 * 1000L));
+    private static final int ARCHIVE_BATCH_SIZE = 1000;
+    private ScheduledExecutorService archiver;
+    private WriteAheadLog log;
+    //a snapshot of the state is written after this many mutations. Set with auction.snapshot.interval.
+    private static final long SNAPSHOT_INTERVAL = Long.getLong("auction.snapshot.interval", 10000L);
+    private static final int CATCH_UP_TIMEOUT = 60000;
+    private long snapshotSequence;
+    private ExecutorService snapshotter;
+    //the end times of the active auctions are checked every tick, in milliseconds. Set with auction.expiry.tick.
+    private static final long EXPIRY_TICK = Long.getLong("auction.expiry.tick", 100L);
+    private final TimingWheel expiry = new TimingWheel(EXPIRY_TICK, System.currentTimeMillis());
+    //auctions that expired while this replica was not the primary and are not closed yet.
+    private final LinkedHashSet<String> overdue = new LinkedHashSet<>();
+    private ScheduledExecutorService expirer;
+    private RpcDispatcher dispatcher;
+    //the ID of the replica in its shard, which names its data directory. Set with auction.replica.id.
+    private static final String REPLICA_ID = System.getProperty("auction.replica.id", "0");
+    private FileChannel lockChannel;
+    //set once a failure left the files of the replica behind its state, see stop.
+    private volatile boolean stopped;
+    //the epoch of the mutations written by this replica as the primary, 0 until it caught up with the other replicas, see promote.
+    private volatile long primaryEpoch;
+    private static final long PROMOTION_RETRY_DELAY = 1000;
+    private ScheduledExecutorService promoter;
+    //a Cipher can not be used by two threads at the same time, so every thread keeps its own.
+    private static final ThreadLocal<HashMap<String,Cipher>> CIPHERS = ThreadLocal.withInitial(HashMap::new);
+    //the sequence number of the last mutation committed by the request executed by this thread, 0 if none.
+    private static final ThreadLocal<Long> COMMITTED = ThreadLocal.withInitial(() -> 0L);
 
+    /**
+     * Constructor of a replica of the shard set with auction.shard
+     */
+    public Auction_Server_Replica()
+    {
+        this(Shards.configured());
+    }
 
     /**
-     * This method creates a new action, updates the state of the data and returns
-     * the new auctionID to the server.
+     * Constructor of the class
+     * @param shard the shard of the replica
+     */
+    public Auction_Server_Replica(int shard)
+    {
+        super(shard);
+    }
+
+
+    /**
+     * This method creates a new action, replicates the new auction and returns
+     * the new auctionID to the server. Only executed by the primary replica.
      * @param itemDesc A small description of the item to sold
      * @param startingPrice The starting price of the item
      * @param reservedPrice The minimum accepted price for an item
      * @return auctionID that will be used to bid for that specific item
      */
     public String createAction(String itemDesc, BigDecimal reservedPrice, BigDecimal startingPrice,String sellerID)
+    {
+        return createAction(itemDesc,reservedPrice,startingPrice,sellerID,0);
+    }
+
+    /**
+     * This method creates a new action that is closed automatically at the end of a duration,
+     * replicates the new auction and returns the new auctionID to the server. Only executed by the primary replica.
+     * @param itemDesc A small description of the item to sold
+     * @param startingPrice The starting price of the item
+     * @param reservedPrice The minimum accepted price for an item
+     * @param duration the time in milliseconds until the auction is closed, 0 if only the seller closes it
+     * @return auctionID that will be used to bid for that specific item
+     */
+    public String createAction(String itemDesc, BigDecimal reservedPrice, BigDecimal startingPrice,String sellerID,long duration)
     {
         String auctionID;
         Auction newAuction = new Auction(itemDesc,reservedPrice,startingPrice, BigDecimal.ZERO," ",sellerID, "Active");
 
-        auctionID = newAuction.createAuctionID();
-
-        //Create new actionID if the one created is already taken by another auction.
-        if(activeAuctions.get(auctionID) != null)
-            auctionID = newAuction.createAuctionID();
-
-        activeAuctions.put(auctionID,newAuction);
-        getNewState(this.channelB,this.activeAuctions,this.closedAuctions,this.registeredClients);
+        synchronized (myState)
+        {
+            checkPrimary();
+            auctionID = nextID();
+            newAuction.setAuctionID(auctionID);
+            //the end time is given by the primary, so every replica closes the auction at the same time.
+            if(duration > 0)
+                newAuction.setEndTime(System.currentTimeMillis() + duration);
+            replicate(Mutation.auctionCreated(newAuction));
+        }
         return auctionID;
     }
 
     /**
-     * This method tries to close an auction If succeed updates the state.
+     * This method tries to close an auction If succeed replicates the change.
+     * Only executed by the primary replica.
      * @param auctionID The ID of the auction to be closed
      * @return true if the auction exists otherwise it returns false
      */
     public int closeAuction1(String auctionID,String sellerID)
     {
-        Auction auctionToClose;
-        if(activeAuctions.get(auctionID) == null)
-            return -1;
-        else if(!sellerID.equals(activeAuctions.get(auctionID).getSellerID()))
-            return 0;
-        else {
-            //Add the closed auction to the closedMap and remove it from the map with the active auctions.
-            activeAuctions.get(auctionID).setAuctionStatus("Closed");
-            auctionToClose = activeAuctions.get(auctionID);
-            closedAuctions.put(auctionID,auctionToClose);
-            activeAuctions.remove(auctionID);
-            getNewState(this.channelB,this.activeAuctions,this.closedAuctions,this.registeredClients);
-            return 1;
+        synchronized (myState)
+        {
+            checkPrimary();
+            Auction auctionToClose = myState.getActiveAuctions().get(auctionID);
+            if(auctionToClose == null)
+                return -1;
+            else if(!sellerID.equals(auctionToClose.getSellerID()))
+                return 0;
+            else {
+                //Moves the auction from the active auctions to the closed auctions on every replica.
+                replicate(Mutation.auctionClosed(auctionID,closedTime(auctionToClose,System.currentTimeMillis())));
+                return 1;
+            }
         }
     }
 
     /**
-     * Checks if the ID is already used from another Client
+     * Checks if the ID is already used from another Client, if not the client is registered.
+     * Only executed by the primary replica.
      * @param clientID ID of Client
      * @param client Instance of the object client
      * @return true if ID in use false if ID available
      */
     public boolean validateClientID1(String clientID, Client client){
-        if(registeredClients.containsKey(clientID))
-            return true;
-        registeredClients.put(clientID,client);
-        getNewState(this.channelB,this.activeAuctions,this.closedAuctions,this.registeredClients);
-
+        synchronized (myState)
+        {
+            checkPrimary();
+            if(myState.getRegisteredClients().containsKey(clientID))
+                return true;
+            replicate(Mutation.clientRegistered(clientID,client));
+        }
         return false;
     }
 
     /**
-     * Checks if the ID is associated with an entry in the HashMap
+     * Registers a new client with an ID given by the primary. Only executed by the primary replica.
+     * @param client Instance of the object client
+     * @return the ID of the client
+     */
+    public String registerClient1(Client client){
+        synchronized (myState)
+        {
+            checkPrimary();
+            String clientID = nextID();
+            client.setUserID(clientID);
+            replicate(Mutation.clientRegistered(clientID,client));
+            return clientID;
+        }
+    }
+
+    /**
+     * Returns the next free ID for an auction or a client. The ID is used by the mutation that is
+     * replicated next, which makes every replica record it, so a new primary continues after it.
+     * The ID belongs to the shard of this replica. Must be called while holding the lock of the state.
+     * @return a 64 bit ID
+     */
+    private String nextID()
+    {
+        return Long.toString(Shards.nextID(myState.getLastID(), this.shard));
+    }
+
+    /**
+     * Checks if the ID belongs to an active auction of this replica
      * @param auctionID ID of the auction
-     * @param activeAuctions HashMap with all the active auctions
      * @return true if auction entry exists otherwise returns false
      */
-    public boolean validateAuctionID1(String auctionID, HashMap<String,Auction> activeAuctions){
-        /* if auction with that auctionID exist returns true otherwise returns false */
-        return activeAuctions.containsKey(auctionID);
+    public boolean auctionExists1(String auctionID){
+        synchronized (myState)
+        {
+            return myState.getActiveAuctions().containsKey(auctionID);
+        }
+    }
+
+    /**
+     * Returns an active auction of this replica
+     * @param auctionID ID of the auction
+     * @return the auction, or null if there is no active auction with that ID
+     */
+    public Auction getActiveAuction1(String auctionID){
+        synchronized (myState)
+        {
+            return myState.getActiveAuctions().get(auctionID);
+        }
+    }
+
+    /**
+     * Returns the accepted bids of an active or closed auction of this replica, from the state or from the archive
+     * @param auctionID ID of the auction
+     * @return a snapshot of the bid history, or null if no bid was accepted for that auction
+     */
+    public BidHistory getBidHistory1(String auctionID){
+        synchronized (myState)
+        {
+            BidHistory history = myState.getBidHistories().get(auctionID);
+            if(history != null)
+                return history.snapshot();
+            if(myState.getActiveAuctions().containsKey(auctionID) || myState.getClosedAuctions().containsKey(auctionID))
+                return null;
+            return this.archive.getBidHistory(auctionID);
+        }
     }
 
     /**
      * Takes a input a price and checks if the bid is greater than the currentHighest bid
-     * and change the auction values.
+     * and change the auction values. Only executed by the primary replica.
      * @param price User Bid
      * @param auctionID ID of the auction
      * @param bidderID ID of bidder
@@ -116,16 +258,77 @@ public class Auction_Server_Replica extends ReceiverAdapter{
      */
     public String bidFromItem1(BigDecimal price, String auctionID,String bidderID) {
 
-        if(price.compareTo(activeAuctions.get(auctionID).getHighestBid()) == 1)
+        ArrayList<Bid> bids = new ArrayList<>();
+        bids.add(new Bid(price,auctionID,bidderID));
+        return bidFromItems1(bids).get(0);
+    }
+
+    /**
+     * Applies a batch of bids in the order they are given and replicates all the accepted bids
+     * with a single message. A bidder whose bid is rejected because of a higher bid still participates
+     * in the auction, which is replicated in the same message. Only executed by the primary replica.
+     * @param bids the bids to apply
+     * @return a message for every bid to indicate whether the bid is accepted
+     */
+    public ArrayList<String> bidFromItems1(ArrayList<Bid> bids)
+    {
+        ArrayList<String> replies = new ArrayList<>(bids.size());
+        ArrayList<Mutation> mutations = new ArrayList<>();
+
+        synchronized (myState)
         {
-            activeAuctions.get(auctionID).setHighestBid(price);
-            activeAuctions.get(auctionID).setHighestBidderID(bidderID);
-            return "Your bid has been accepted. ";
+            checkPrimary();
+            long time = System.currentTimeMillis();
+            for(Bid bid : bids)
+            {
+                Auction auction = myState.getActiveAuctions().get(bid.getAuctionID());
+                if(auction == null || hasEnded(auction,time))
+                    replies.add("Your bid has bin rejected because the auction is no longer active.");
+                else if(BidHistory.bidderID(bid.getBidderID()) < 0)
+                    replies.add("Your bid has bin rejected because the bidder ID is not valid.");
+                else if(bid.getPriceMinor() > auction.getHighestBidMinor())
+                {
+                    //applied straight away so that the next bids of the batch are compared to this one
+                    mutations.add(commit(Mutation.bidAccepted(bid.getAuctionID(),bid.getPriceMinor(),bid.getBidderID(),time)));
+                    replies.add("Your bid has been accepted. ");
+                }
+                else
+                {
+                    //the bidder is notified when the auction is closed, even if the bid is not the highest.
+                    if(!myState.isParticipant(bid.getAuctionID(),bid.getBidderID()))
+                        mutations.add(commit(Mutation.participantAdded(bid.getAuctionID(),bid.getBidderID())));
+                    replies.add("Your bid has bin rejected because there is a higher bidder.");
+                }
+            }
+            multicast(mutations);
         }
-        else
-            return "Your bid has bin rejected because there is a higher bidder.";
+        return replies;
+    }
+
+
+    /**
+     * Checks if an auction reached its end time. The auction is closed by the next tick of the timing wheel,
+     * the bids that arrive meanwhile are rejected, as they would be if it was already closed.
+     * @param auction the active auction
+     * @param now the current time in milliseconds since the epoch
+     * @return true if the auction does not accept bids anymore
+     */
+    private static boolean hasEnded(Auction auction, long now)
+    {
+        return auction.getEndTime() != 0 && now >= auction.getEndTime();
     }
 
+    /**
+     * Returns the time an auction is closed at: an auction that reached its end time is closed at its end time,
+     * so the time does not depend on when the primary closes it.
+     * @param auction the active auction
+     * @param now the current time in milliseconds since the epoch
+     * @return the time in milliseconds since the epoch
+     */
+    private static long closedTime(Auction auction, long now)
+    {
+        return hasEnded(auction, now) ? auction.getEndTime() : now;
+    }
 
     /**
      * Check if the highest bid is larger than the reserved price
@@ -134,17 +337,41 @@ public class Auction_Server_Replica extends ReceiverAdapter{
      */
     public Client announceWinner1(String auctionID){
 
-        BigDecimal highestBid, reservedPrice;
-        Auction auction = closedAuctions.get(auctionID);
-        highestBid = auction.getHighestBid();
-        reservedPrice = auction.getReservedPrice();
-        Client winner;
+        synchronized (myState)
+        {
+            String winnerID = getWinnerID1(auctionID);
+            return winnerID == null ? null : myState.getRegisteredClients().get(winnerID);
+        }
+    }
 
-        if(highestBid.compareTo(reservedPrice) == 1 || highestBid.compareTo(reservedPrice) == 0){
-            winner = registeredClients.get(auction.getHighestBidderID());
-            return winner;
-        }else
-            return null;
+    /**
+     * Returns the ID of the winner of a closed auction, used when the winner is registered in an other shard
+     * @param auctionID ID of the auction
+     * @return the ID of the highest bidder, or null if no bid was accepted or reserved price is not met
+     */
+    public String getWinnerID1(String auctionID){
+
+        synchronized (myState)
+        {
+            Auction auction = myState.getClosedAuctions().get(auctionID);
+            if(auction == null)
+                auction = this.archive.get(auctionID);
+
+            return auction.getWinnerID();
+        }
+    }
+
+    /**
+     * Returns a registered client
+     * @param clientID ID of the client
+     * @return the client, or null if there is no client with that ID in this shard
+     */
+    public Client getClient1(String clientID){
+
+        synchronized (myState)
+        {
+            return myState.getRegisteredClients().get(clientID);
+        }
     }
 
     /**
@@ -154,21 +381,16 @@ public class Auction_Server_Replica extends ReceiverAdapter{
      */
     public boolean validateUserName1(String userName)
     {
-        boolean ans = false;
-        for (Map.Entry<String, Client> entry : registeredClients.entrySet()) {
-            Client client = entry.getValue();
-            if(client.getName().equals(userName)){
-                ans = true;
-                break;
-            }
+        synchronized (myState)
+        {
+            return myState.getClientByName(userName) != null;
         }
-        return ans;
     }
 
     /**
-     * Server get the random number, retireves the key from the file and encrypts the
+     * Server get the random number, retireves the key of the user and encrypts the
      * number using the key
-     * @param key The key generated from the password in the file
+     * @param key The name of the user whose key is used
      * @param randomNum the challenge of the client for the server
      * @return Authentication reply-> server's challenge for the client and his challenge solved
      */
@@ -178,8 +400,8 @@ public class Auction_Server_Replica extends ReceiverAdapter{
         String algorithm = secretKey.getAlgorithm();
         AuthenticationReply authenticationReply = null;
         try {
-            //encrypts the random namber using the key from the file
-            Cipher cipher = Cipher.getInstance(algorithm);
+            //encrypts the random namber using the key of the user
+            Cipher cipher = cipher(algorithm);
             cipher.init(Cipher.ENCRYPT_MODE,secretKey);
             byte[] encrypted = cipher.doFinal(Integer.toString(randomNum).getBytes());
             //creates an istance of the reply to be sent to the client
@@ -200,7 +422,7 @@ public class Auction_Server_Replica extends ReceiverAdapter{
      * This method authenticated the client,by decrypting the encrypted challenge to check if
      * resulting number is the same as the one passed as the challenge in the AuthenticationReply instance
      * @param authenticationReply Clint's response
-     * @param keyFileName filename tha holds the key
+     * @param keyFileName the name of the user whose key is used
      * @return
      */
     public Boolean authenticateClint1(AuthenticationReply authenticationReply, String keyFileName){
@@ -210,7 +432,7 @@ public class Auction_Server_Replica extends ReceiverAdapter{
         Key secretKey = getServerKey1(keyFileName);
 
         try {
-            Cipher cipher = Cipher.getInstance(secretKey.getAlgorithm());
+            Cipher cipher = cipher(secretKey.getAlgorithm());
             cipher.init(Cipher.DECRYPT_MODE,secretKey);
             cipher.doFinal(authenticationReply.getEncryptedNum());
 
@@ -227,32 +449,154 @@ public class Auction_Server_Replica extends ReceiverAdapter{
 
 
     /**
-     * loads the password from the file as a string using a given username,
-     * and then generated a key using the string.
-     * @param keyFileName the name of the file that holds the string value
+     * Returns the Cipher of this thread for an algorithm, creating it the first time it is used
+     * @param algorithm the algorithm of the key
+     * @return Cipher
+     * @throws NoSuchAlgorithmException
+     * @throws NoSuchPaddingException
+     */
+    private static Cipher cipher(String algorithm) throws NoSuchAlgorithmException, NoSuchPaddingException
+    {
+        HashMap<String,Cipher> ciphers = CIPHERS.get();
+        Cipher cipher = ciphers.get(algorithm);
+        if(cipher == null)
+        {
+            cipher = Cipher.getInstance(algorithm);
+            ciphers.put(algorithm,cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Returns the key of a user from the key cache, the key is loaded from the credential store on a miss.
+     * @param keyFileName the name of the user
      * @return an istance of the key
      */
     public Key getServerKey1(String keyFileName) {
+        return this.keyCache.get(keyFileName.toUpperCase(), this::loadServerKey);
+    }
 
-        File file = new File(keyFileName.toUpperCase() + ".txt");
-        BufferedReader br;
-        Key secretKey = null;
+    /**
+     * Returns the metrics of the key cache of this replica
+     * @return hits, misses, evictions and invalidations of the cache
+     */
+    public String getKeyCacheMetrics1()
+    {
+        return this.keyCache.toString();
+    }
 
-        try{
-            br = new BufferedReader(new FileReader(file));
-            String st = br.readLine();
-            String array2[] = st.split(",", 2);
-            String key = array2[1];
-            while(key.length()<16)
-                key = key+"0";
-            secretKey = new SecretKeySpec(key.getBytes(),"AES");
+    /**
+     * Returns the metrics of the write-ahead log of this replica
+     * @return the number of forces of the log and of the mutations they wrote
+     */
+    public String getLogMetrics1()
+    {
+        return this.log.toString();
+    }
 
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Returns the sequence number of the last mutation applied by this replica, used by a replica that restarted
+     * to check that its log is not ahead of this one.
+     * @return long
+     */
+    public long getSequence1()
+    {
+        synchronized (myState)
+        {
+            return myState.getSequence();
+        }
+    }
+
+    /**
+     * Returns the epoch and the sequence number of the last mutation applied by this replica and the highest epoch
+     * it received from a primary, used by a replica that becomes the primary to find the most advanced replica
+     * and to choose an epoch higher than every epoch in use.
+     * @return the epoch, the sequence number and the highest epoch
+     */
+    public long[] getPosition1()
+    {
+        synchronized (myState)
+        {
+            return new long[]{myState.getEpoch(), myState.getSequence(), Math.max(getReceivedEpoch(), this.primaryEpoch)};
+        }
+    }
+
+    /**
+     * Returns the mutations applied after a sequence number, used by a replica that restarted
+     * to catch up with this one instead of receiving the whole state.
+     * @param sequence the sequence number of the last mutation the replica has
+     * @return the batch of mutations, or null if the log of this replica no longer holds all of them
+     * @throws IOException
+     */
+    public byte[] getMutationsAfter1(long sequence) throws IOException
+    {
+        List<Mutation> mutations = this.log.readAfter(sequence);
+        if(mutations == null)
+            return null;
+        int size = 4;
+        for(Mutation mutation : mutations)
+            size += mutation.size();
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream(size);
+        Mutation.writeBatch(mutations,out);
+        return Arrays.copyOf(out.buffer(), out.position());
+    }
+
+    /**
+     * loads the password of a user from the credential store,
+     * and then generated a key using the string.
+     * @param userName the name of the user in upper case
+     * @return an istance of the key, or null if the user is not in the store
+     */
+    private Key loadServerKey(String userName) {
+
+        String key = this.credentialStore == null ? null : this.credentialStore.getPassword(userName);
+        if(key == null)
+        {
+            System.out.println("[REPLICA] There are no credentials for " + userName);
+            return null;
+        }
+        while(key.length()<16)
+            key = key+"0";
+        return new SecretKeySpec(key.getBytes(),"AES");
+    }
+
+    /**
+     * Returns the directory where a replica keeps its files. Set with the system property auction.data.dir,
+     * the default is a directory named after the shard and the ID of the replica in the directory data,
+     * so a replica finds its files again when it is started again with the same ID.
+     * @param shard the shard of the replica
+     * @param replicaID the ID of the replica in its shard
+     * @return File
+     */
+    static File dataDir(int shard, String replicaID)
+    {
+        return new File(System.getProperty("auction.data.dir",
+                "data" + File.separator + REPLICA_NAME_PREFIX + shard + "-" + replicaID));
+    }
+
+    /**
+     * Locks the data directory of this replica, so two replicas never use the same files.
+     * The lock is released when the replica is closed or its process stops.
+     * @param dir the data directory
+     * @throws IOException if the directory can not be created or an other replica uses it
+     */
+    private void lockDataDir(File dir) throws IOException
+    {
+        if(!dir.exists() && !dir.mkdirs())
+            throw new IOException("[REPLICA] Can not create the directory " + dir);
+        FileChannel channel = FileChannel.open(new File(dir, "replica.lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
         }
-        return secretKey;
+        if(lock == null)
+        {
+            channel.close();
+            throw new IOException("[REPLICA] " + dir + " is used by an other replica, every replica of a shard needs its own auction.replica.id");
+        }
+        this.lockChannel = channel;
     }
 
     /**
@@ -262,12 +606,10 @@ public class Auction_Server_Replica extends ReceiverAdapter{
      */
     public Client getClientOnPass1(String password){
 
-        for (Map.Entry<String, Client> entry : registeredClients.entrySet()) {
-            Client client = entry.getValue();
-            if(client.getUserPass().equals(password))
-                return client;
+        synchronized (myState)
+        {
+            return myState.getClientByPass(password);
         }
-        return null;
     }
 
     /**
@@ -276,15 +618,52 @@ public class Auction_Server_Replica extends ReceiverAdapter{
      */
     public HashMap<String,Auction> getActiveAuctions1()
     {
-        return activeAuctions;
+        synchronized (myState)
+        {
+            return new HashMap<>(myState.getActiveAuctions());
+        }
+    }
+
+    /**
+     * Returns a page of the active auctions
+     * @param pageSize the maximum number of auctions of the page
+     * @param cursor the cursor returned with the previous page or null for the first page
+     * @param sellerID only the auctions of this seller are listed, or all of them if null
+     * @param order the order of the auctions
+     * @return AuctionPage
+     */
+    public AuctionPage getActiveAuctionsPage1(int pageSize, String cursor, String sellerID, AuctionOrder order)
+    {
+        synchronized (myState)
+        {
+            return AuctionPage.select(myState.getActiveAuctions().values(),pageSize,cursor,sellerID,order);
+        }
     }
 
     /**
-     * Accessor for closedAuctions
-     * @return list of all the closed auctions
+     * Accessor for closedAuctions, the auctions closed less than ARCHIVE_AGE ago that are still in the state.
+     * The archived auctions are only read one at a time with getClosedAuction1, so the reply does not grow
+     * with every auction ever closed.
+     * @return list of the recently closed auctions
      */
     public HashMap<String, Auction> getClosedAuctions1(){
-        return closedAuctions;
+        synchronized (myState)
+        {
+            return new HashMap<>(myState.getClosedAuctions());
+        }
+    }
+
+    /**
+     * Returns a closed auction from the state or from the archive
+     * @param auctionID ID of the auction
+     * @return the auction, or null if it is not closed
+     */
+    public Auction getClosedAuction1(String auctionID){
+        synchronized (myState)
+        {
+            Auction auction = myState.getClosedAuctions().get(auctionID);
+            return auction != null ? auction : this.archive.get(auctionID);
+        }
     }
 
     /**
@@ -293,7 +672,10 @@ public class Auction_Server_Replica extends ReceiverAdapter{
      */
     public HashMap<String,Client> getRegisteredClients1()
     {
-        return registeredClients;
+        synchronized (myState)
+        {
+            return new HashMap<>(myState.getRegisteredClients());
+        }
     }
 
 
@@ -303,94 +685,674 @@ public class Auction_Server_Replica extends ReceiverAdapter{
      * @throws Exception
      */
     public void start() throws Exception{
+        String name = REPLICA_NAME_PREFIX + this.shard + "-" + Util.generateLocalName();
+        File dataDir = dataDir(this.shard, REPLICA_ID);
+        lockDataDir(dataDir);
+        this.credentialStore = new CredentialStore(new File(dataDir, "credentials.db"));
+        this.archive = new ClosedAuctionArchive(new File(dataDir, "closed-auctions.seg"));
+        this.log = new WriteAheadLog(dataDir);
+        this.snapshotter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        synchronized (myState)
+        {
+            long mutations = this.log.replay(myState, this::recovered);
+            this.snapshotSequence = myState.getSequence() - mutations;
+            if(myState.getSequence() > 0)
+            {
+                System.out.println("[REPLICA] Recovered the state up to mutation " + myState.getSequence()
+                        + " from the snapshot and " + mutations + " mutations of the log");
+                reconcile();
+            }
+        }
         this.channelA = new JChannel();
+        this.channelA.setName(name);
         this.channelA.connect(CLUSTER_NAME);
-        RpcDispatcher dispatcher = new RpcDispatcher(this.channelA, this);
-
-        this.channelB = new JChannel();
-        this.channelB.setReceiver(this);
-        this.channelB.connect(SECOND_CLUSTER_NAME);
-        this.channelB.getState(null,TIMEOUT);
+        this.dispatcher = new DurableDispatcher(this.channelA, this);
+        this.dispatcher.setMembershipListener(new ReceiverAdapter() {
+            @Override
+            public void viewAccepted(View view)
+            {
+                replicasChanged(view);
+            }
+        });
+        try {
+            subscribe(name);
+        } catch (Exception e) {
+            //the files are left as they are, so the replica can be started again.
+            close();
+            throw e;
+        }
+        this.promoter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "primary-promotion");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.promoter.execute(this::promote);
+        this.archiver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "auction-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.archiver.scheduleWithFixedDelay(this::archiveClosedAuctions, ARCHIVE_CHECK_INTERVAL, ARCHIVE_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        this.expirer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "auction-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.expirer.scheduleAtFixedRate(this::closeExpiredAuctions, EXPIRY_TICK, EXPIRY_TICK, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * prints the view of the system.
-     * @param new_view
+     * Turns the timing wheel of the end times of the active auctions and closes the auctions that expired.
+     * Every replica turns its wheel, but only the primary closes the auctions, with a mutation like
+     * the seller does, so the winner is announced to the participants. The auctions that expire on an
+     * other replica are kept until they are closed, so a replica that becomes the primary closes them.
      */
-    public void viewAccepted(View new_view)
+    private void closeExpiredAuctions()
     {
-        System.out.println("received view " + new_view);
+        try {
+            synchronized (myState)
+            {
+                long now = System.currentTimeMillis();
+                this.expiry.advance(now, this.overdue::add);
+                if(this.overdue.isEmpty() || !isPrimary())
+                    return;
+                ArrayList<String> expired = new ArrayList<>(this.overdue);
+                this.overdue.clear();
+                ArrayList<Mutation> closed = new ArrayList<>(expired.size());
+                for(String auctionID : expired)
+                {
+                    Auction auction = myState.getActiveAuctions().get(auctionID);
+                    if(auction != null)
+                        closed.add(commit(Mutation.auctionClosed(auctionID, closedTime(auction, now))));
+                }
+                multicast(closed);
+            }
+        } catch (Exception e) {
+            //an exception would stop the scheduled task
+            e.printStackTrace();
+        }
     }
 
     /**
-     * receives a message tha holds the current state and updates the
-     * data in the state class
-     * @param message
+     * Brings the state recovered from the log up to date with the mutations the primary applied after it,
+     * instead of receiving the whole state. The state is kept as it is if there is no other replica,
+     * and is received whole if its last mutation was written by a primary that was replaced.
+     * A replica whose log is ahead of the primary does not start, since the state of the primary would replace
+     * mutations that were acknowledged to the clients. It must be started before the other replicas of its shard,
+     * so it becomes the primary.
+     * @return true if the state is up to date, false if the whole state must be transferred
+     * @throws Exception if the log of this replica is ahead of the primary
      */
-    public void receive(Message message)
+    @Override
+    protected boolean catchUp() throws Exception
     {
-        State tempState = (State)message.getObject();
+        long sequence;
         synchronized (myState)
         {
-            myState.setActiveAuctions(tempState.getActiveAuctions());
-            myState.setClosedAuctions(tempState.getClosedAuctions());
-            myState.setRegisteredClients(tempState.getRegisteredClients());
+            sequence = myState.getSequence();
+        }
+        if(sequence == 0)
+            return false;
+        Address primary = primaryOf(this.channelA.getView(), this.shard);
+        if(primary == null || primary.equals(this.channelA.getAddress()))
+        {
+            System.out.println("[REPLICA] There is no other replica, continuing from mutation " + sequence);
+            return true;
+        }
+        long primarySequence = this.dispatcher.<Long>callRemoteMethod(primary, "getSequence1", new Object[]{},
+                new Class[]{}, new RequestOptions(ResponseMode.GET_FIRST, CATCH_UP_TIMEOUT));
+        if(primarySequence < sequence)
+            throw new IllegalStateException("[REPLICA] The log of this replica is at mutation " + sequence
+                    + " but the primary is at mutation " + primarySequence + ", start this replica before the other"
+                    + " replicas of shard " + this.shard + " so the mutations after " + primarySequence + " are kept");
+        //the last mutation of the log is fetched too, to check that the primary applied it in the same epoch.
+        List<Mutation> mutations = mutationsAfter(primary, sequence - 1);
+        if(mutations == null)
+        {
+            System.out.println("[REPLICA] The primary no longer has the mutations after " + sequence + ", receiving the whole state");
+            return false;
+        }
+        synchronized (myState)
+        {
+            if(!applyChecked(mutations))
+            {
+                System.out.println("[REPLICA] Mutation " + sequence + " of the log was written by a replaced primary, receiving the whole state");
+                return false;
+            }
+            System.out.println("[REPLICA] Caught up from mutation " + sequence + " to " + myState.getSequence()
+                    + " with " + (mutations.size() - 1) + " mutations from the primary");
+        }
+        return true;
+    }
+
+    /**
+     * Fetches the mutations missed by this replica from the log of the primary
+     * @param sequence the sequence number of the last mutation of the state
+     * @return the mutations after sequence, or null if this replica is the primary or the primary no longer has them
+     * @throws Exception
+     */
+    @Override
+    protected List<Mutation> fetchMissed(long sequence) throws Exception
+    {
+        Address primary = primaryOf(this.channelA.getView(), this.shard);
+        if(primary == null || primary.equals(this.channelA.getAddress()))
+            return null;
+        return mutationsAfter(primary, sequence);
+    }
+
+    /**
+     * Asks a replica for the mutations it applied after a sequence number
+     * @param replica the replica to ask
+     * @param sequence the sequence number of the last mutation of the state
+     * @return the mutations, or null if the log of the replica no longer holds all of them
+     * @throws Exception
+     */
+    private List<Mutation> mutationsAfter(Address replica, long sequence) throws Exception
+    {
+        byte[] batch = this.dispatcher.callRemoteMethod(replica, "getMutationsAfter1", new Object[]{sequence},
+                new Class[]{long.class}, new RequestOptions(ResponseMode.GET_FIRST, CATCH_UP_TIMEOUT));
+        return batch == null ? null : Mutation.readBatch(new ByteArrayDataInputStream(batch));
+    }
+
+    /**
+     * Returns the member asked for the state, which is the primary, so the state of a replica that missed
+     * the change of the primary is replaced by the state of the new one. A replica that is the primary asks
+     * the oldest other replica.
+     * @return the address of the replica in MY_SECOND_CLUSTER, or null to ask the coordinator if there is no other replica
+     */
+    @Override
+    protected Address stateProvider()
+    {
+        Address primary = primaryOf(this.channelA.getView(), this.shard);
+        if(primary == null || primary.equals(this.channelA.getAddress()))
+            return super.stateProvider();
+        Address subscriber = subscriberOf(primary);
+        return subscriber == null ? super.stateProvider() : subscriber;
+    }
+
+    /**
+     * Returns the address in MY_SECOND_CLUSTER of a replica, which has the same name in both clusters
+     * @param replica the address of the replica in MY_CLUSTER
+     * @return the address, or null if the replica is not in MY_SECOND_CLUSTER
+     */
+    private Address subscriberOf(Address replica)
+    {
+        String name = UUID.get(replica);
+        for(Address member : this.channelB.getView().getMembers())
+            if(name != null && name.equals(UUID.get(member)))
+                return member;
+        return null;
+    }
+
+    /**
+     * Called with every view of MY_CLUSTER. A replica that is no longer the primary stops executing
+     * the write requests, and a replica that becomes the primary is promoted, see promote.
+     * @param view the view of MY_CLUSTER
+     */
+    private void replicasChanged(View view)
+    {
+        if(!this.channelA.getAddress().equals(primaryOf(view, this.shard)))
+            this.primaryEpoch = 0;
+        else if(this.primaryEpoch == 0 && this.promoter != null && !this.promoter.isShutdown())
+            this.promoter.execute(this::promote);
+    }
+
+    /**
+     * Makes this replica the primary once it is the oldest replica of its shard. It first asks the other replicas
+     * for their last mutation and catches up with the most advanced one, so it never writes again a sequence number
+     * a replica already applied. Then it writes its mutations with an epoch higher than any epoch the replicas received,
+     * so the replicas ignore the mutations of the previous primary that arrive later. Tried again while it fails.
+     */
+    private void promote()
+    {
+        try {
+            if(this.stopped || this.primaryEpoch != 0 || !leads())
+                return;
+            long[] own = getPosition1(), best = own;
+            long epoch = own[2];
+            Address source = null;
+            for(Address replica : replicasOf(this.channelA.getView(), this.shard))
+            {
+                if(replica.equals(this.channelA.getAddress()))
+                    continue;
+                long[] position = this.dispatcher.callRemoteMethod(replica, "getPosition1", new Object[]{},
+                        new Class[]{}, new RequestOptions(ResponseMode.GET_FIRST, CATCH_UP_TIMEOUT));
+                epoch = Math.max(epoch, position[2]);
+                if(position[0] > best[0] || (position[0] == best[0] && position[1] > best[1]))
+                {
+                    best = position;
+                    source = replica;
+                }
+            }
+            if(source != null)
+                catchUpWith(source, best[1]);
+            synchronized (myState)
+            {
+                if(this.stopped || !leads())
+                    return;
+                dropOutOfOrder();
+                this.primaryEpoch = Math.max(epoch, getReceivedEpoch()) + 1;
+                System.out.println("[REPLICA] Became the primary of shard " + this.shard + " at mutation "
+                        + myState.getSequence() + " with epoch " + this.primaryEpoch);
+            }
+        } catch (Exception e) {
+            System.out.println("[REPLICA] Failed to catch up with the replicas of shard " + this.shard
+                    + " before becoming the primary, trying again: " + e);
+            this.promoter.schedule(this::promote, PROMOTION_RETRY_DELAY, TimeUnit.MILLISECONDS);
         }
     }
 
     /**
-     * retrieves the state of the system when entering the channel
-     * @param outputStream
+     * Brings the state up to date with a replica that is ahead of this one, with the mutations of its log,
+     * or else with its whole state
+     * @param replica the address of the replica in MY_CLUSTER
+     * @param sequence the sequence number of the last mutation the replica applied
+     * @throws Exception if the state could not be brought up to date
      */
-    public void getState(OutputStream outputStream)
+    private void catchUpWith(Address replica, long sequence) throws Exception
     {
-        try
+        long last;
+        synchronized (myState)
         {
-            Util.objectToStream(myState,new DataOutputStream(outputStream));
-        }catch (Exception e)
+            last = myState.getSequence();
+        }
+        List<Mutation> mutations = mutationsAfter(replica, Math.max(0, last - 1));
+        synchronized (myState)
         {
-            e.printStackTrace();
+            if(mutations != null && applyChecked(mutations) && myState.getSequence() >= sequence)
+            {
+                System.out.println("[REPLICA] Caught up from mutation " + last + " to " + myState.getSequence()
+                        + " with the mutations of " + UUID.get(replica));
+                return;
+            }
+        }
+        System.out.println("[REPLICA] The mutations of " + UUID.get(replica) + " after " + last
+                + " can not be fetched or do not follow the state, receiving its whole state");
+        Address subscriber = subscriberOf(replica);
+        if(subscriber == null)
+            throw new IllegalStateException("[REPLICA] " + UUID.get(replica) + " is not in " + clusterName(this.shard));
+        receiveState(subscriber);
+        synchronized (myState)
+        {
+            if(myState.getSequence() < sequence)
+                throw new IllegalStateException("[REPLICA] The state received from " + UUID.get(replica)
+                        + " ends at mutation " + myState.getSequence() + " instead of " + sequence);
         }
     }
 
     /**
-     * Sets the state - Set the data instatiated in this cluster member to the data held in the state
-     * @param inputStream
+     * Moves the auctions closed more than ARCHIVE_AGE ago from the state to the archive of every replica.
+     * Only the primary decides which auctions are moved, so every replica keeps the same auctions in its state.
      */
-    public void setState(InputStream inputStream)
+    private void archiveClosedAuctions()
     {
         try {
-            State tempState  = (State) Util.objectFromStream(new DataInputStream(inputStream));
             synchronized (myState)
             {
-                this.activeAuctions = tempState.getActiveAuctions();
-                this.closedAuctions = tempState.getClosedAuctions();
-                this.registeredClients = tempState.getRegisteredClients();
+                if(!isPrimary())
+                    return;
+                long closedBefore = System.currentTimeMillis() - ARCHIVE_AGE;
+                ArrayList<Auction> expired = new ArrayList<>();
+                for(Auction auction : myState.getClosedAuctions().values())
+                    if(auction.getClosedTime() <= closedBefore && expired.size() < ARCHIVE_BATCH_SIZE)
+                        expired.add(auction);
+                ArrayList<Mutation> archived = new ArrayList<>(expired.size());
+                //no bid is appended to the history of a closed auction, so it is sent without a copy.
+                for(Auction auction : expired)
+                    archived.add(commit(Mutation.auctionArchived(auction, myState.getBidHistories().get(auction.getAuctionID()))));
+                multicast(archived);
             }
-        }catch (Exception e)
-        {
+        } catch (Exception e) {
+            //an exception would stop the scheduled task
             e.printStackTrace();
         }
+    }
+
+    /**
+     * The dispatcher of the requests of the replica. The reply to a request that committed mutations is
+     * sent once the mutations are in the write-ahead log, without blocking the thread that executes the requests,
+     * so the requests that follow are executed meanwhile and their mutations share the same force of the log.
+     */
+    private class DurableDispatcher extends RpcDispatcher {
+
+        /**
+         * Constructor of the class
+         * @param channel the channel of the requests
+         * @param target the replica that executes the requests
+         */
+        DurableDispatcher(JChannel channel, Object target)
+        {
+            super(channel, target);
+            asyncDispatching(true);
+        }
+
+        /**
+         * Executes a request and sends the reply, after the mutations of the request are forced to the disk
+         * @param request the message of the request
+         * @param response sends the reply, null if no reply is expected
+         * @throws Exception the exception of the request, sent as the reply
+         */
+        @Override
+        public void handle(Message request, Response response) throws Exception
+        {
+            COMMITTED.set(0L);
+            final Object reply = handle(request);
+            long sequence = COMMITTED.get();
+            if(response == null)
+                return;
+            if(sequence == 0)
+                response.send(reply, false);
+            else
+                Auction_Server_Replica.this.log.whenDurable(sequence, failure -> {
+                    if(failure == null)
+                        response.send(reply, false);
+                    else
+                        response.send(failure, true);
+                });
+        }
+    }
+
+    /**
+     * prints the view of the system.
+     * @param new_view
+     */
+    public void viewAccepted(View new_view)
+    {
+        System.out.println("received view " + new_view);
+    }
 
+    /**
+     * Returns the primary replica of a shard in a view, which is the oldest member that is a replica of the shard.
+     * Other members of the cluster, like the front-end server, are never the primary.
+     * @param view the view of the cluster
+     * @param shard the shard
+     * @return the address of the primary or null if there are no replicas of the shard in the view
+     */
+    static Address primaryOf(View view, int shard)
+    {
+        List<Address> replicas = replicasOf(view, shard);
+        return replicas.isEmpty() ? null : replicas.get(0);
+    }
+
+    /**
+     * Returns the replicas of a view, oldest first.
+     * @param view the view of the cluster
+     * @return the addresses of the members that are replicas
+     */
+    static List<Address> replicasOf(View view)
+    {
+        return replicasOf(view, REPLICA_NAME_PREFIX);
     }
 
     /**
-     * Sent the state as a message so that anyone that
-     * enters the channel will receive the state and update the data.
-     * @param channelB
-     * @param activeAuctions
-     * @param closedAuctions
-     * @param registeredClients
+     * Returns the replicas of a shard in a view, oldest first.
+     * @param view the view of the cluster
+     * @param shard the shard
+     * @return the addresses of the members that are replicas of the shard
      */
-    public synchronized void getNewState(JChannel channelB,HashMap<String,Auction>activeAuctions,HashMap<String,Auction> closedAuctions,HashMap<String,Client>registeredClients)
+    static List<Address> replicasOf(View view, int shard)
     {
-        this.myState.setClosedAuctions(closedAuctions);
-        this.myState.setActiveAuctions(activeAuctions);
-        this.myState.setRegisteredClients(registeredClients);
-        //Pass the state to the other member of the clusters as a message so that all cluster memebrs will have the same view of data/
-        Message message = new Message(null,this.myState);
+        return replicasOf(view, REPLICA_NAME_PREFIX + shard + "-");
+    }
+
+    /**
+     * Returns the members of a view whose name starts with a prefix, oldest first.
+     * @param view the view of the cluster
+     * @param prefix the start of the names
+     * @return the addresses of the members
+     */
+    private static List<Address> replicasOf(View view, String prefix)
+    {
+        List<Address> replicas = new ArrayList<>();
+        for(Address member : view.getMembers())
+        {
+            String name = UUID.get(member);
+            if(name != null && name.startsWith(prefix))
+                replicas.add(member);
+        }
+        return replicas;
+    }
+
+    /**
+     * Checks if this replica is the primary of its shard, caught up with the other replicas and is not stopped
+     * @return true if this replica executes the write requests
+     */
+    public boolean isPrimary()
+    {
+        return !this.stopped && this.primaryEpoch != 0 && leads();
+    }
+
+    /**
+     * Checks if this replica is the oldest replica of its shard, whether it caught up with the other replicas or not
+     * @return true if this replica is or is becoming the primary
+     */
+    @Override
+    protected boolean leads()
+    {
+        return this.channelA != null && this.channelA.getAddress().equals(primaryOf(this.channelA.getView(), this.shard));
+    }
+
+    /**
+     * Rejects a write request that reached a replica that is not the primary, or a primary that is still catching up
+     */
+    private void checkPrimary()
+    {
+        if(isPrimary())
+            return;
+        if(!this.stopped && leads())
+            throw new IllegalStateException("[REPLICA] The primary replica is catching up with the other replicas, try again");
+        throw new IllegalStateException("[REPLICA] Write requests must be sent to the primary replica");
+    }
+
+    /**
+     * Applies a mutation to the state of this replica and sends it as a message
+     * so that all the other cluster members apply the same change in the same order.
+     * Must be called while holding the lock of the state.
+     * @param mutation the change to replicate
+     */
+    private void replicate(Mutation mutation)
+    {
+        multicast(Collections.singletonList(commit(mutation)));
+    }
+
+    /**
+     * Gives the mutation the next sequence number and the epoch of this primary and applies it to the state of this replica.
+     * Must be called while holding the lock of the state.
+     * @param mutation the change to apply
+     * @return the mutation
+     */
+    private Mutation commit(Mutation mutation)
+    {
+        mutation.setSequence(myState.getSequence() + 1);
+        mutation.setEpoch(this.primaryEpoch);
+        myState.apply(mutation);
+        applied(mutation);
+        COMMITTED.set(mutation.getSequence());
+        return mutation;
+    }
+
+    /**
+     * Writes the credentials of a client that registers to the credential store and removes the key
+     * of the client from the key cache, so a client that registers again with the same name
+     * is authenticated with the new password. Writes an archived auction to the archive.
+     * Adds the auctions that have an end time to the timing wheel and removes the closed ones.
+     * Starts a new snapshot every SNAPSHOT_INTERVAL mutations, after the mutation is written to the archive,
+     * so the snapshot never covers an archived auction that is not in the archive, and none once the replica is stopped.
+     * @param mutation the mutation that was applied
+     */
+    @Override
+    protected void applied(Mutation mutation)
+    {
+        this.log.append(mutation);
+        if(mutation.getType() == Mutation.Type.AUCTION_CREATED && mutation.getAuction().getEndTime() != 0)
+            this.expiry.schedule(mutation.getKey(), mutation.getAuction().getEndTime());
+        else if(mutation.getType() == Mutation.Type.AUCTION_CLOSED)
+        {
+            this.expiry.cancel(mutation.getKey());
+            this.overdue.remove(mutation.getKey());
+        }
+        else if(mutation.getType() == Mutation.Type.AUCTION_ARCHIVED)
+            archived(mutation);
+        else if(mutation.getType() == Mutation.Type.CLIENT_REGISTERED)
+            registered(mutation.getClient());
+        if(!this.stopped && mutation.getSequence() - this.snapshotSequence >= SNAPSHOT_INTERVAL)
+            rollLog();
+    }
+
+    /**
+     * Writes the credentials of a client that registered to the credential store and removes the key
+     * of the client from the key cache
+     * @param client the registered client
+     */
+    private void registered(Client client)
+    {
+        if(client == null || client.getName() == null)
+            return;
+        String userName = client.getName().toUpperCase();
+        if(this.credentialStore != null && client.getUserPass() != null)
+            this.credentialStore.put(userName, client.getUserPass());
+        this.keyCache.invalidate(userName);
+    }
+
+    /**
+     * Starts a new segment of the log after a copy of the state, and writes the copy as the snapshot
+     * from an other thread, which then deletes the segments before it. The archive is forced first,
+     * since the snapshot replaces the mutations that would write the archived auctions again.
+     * Must be called while holding the lock of the state.
+     */
+    private void rollLog()
+    {
+        try {
+            this.archive.force();
+        } catch (IOException e) {
+            System.out.println("[REPLICA] Failed to force the archive, the snapshot is tried again after the next mutation: " + e.getMessage());
+            return;
+        }
+        this.snapshotSequence = myState.getSequence();
         try {
-            channelB.send(message);
+            this.log.roll(myState.copy());
+            this.snapshotter.execute(() -> {
+                try {
+                    this.log.snapshot();
+                } catch (IOException e) {
+                    System.out.println("[REPLICA] Failed to write the snapshot: " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            System.out.println("[REPLICA] Failed to start a new segment of the log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes an auction and its bid history removed from the state to the archive.
+     * If that fails the replica is stopped, since the auction is then in neither the state nor the archive.
+     * The mutation is in the log, so the auction is archived again when the replica is started.
+     * @param mutation the mutation that archived the auction
+     */
+    private void archived(Mutation mutation)
+    {
+        try {
+            archive(mutation);
+        } catch (IOException e) {
+            stop("Failed to archive auction " + mutation.getKey() + ": " + e
+                    + ". Start it again once the archive can be written, the auction is archived again from the log");
+        }
+    }
+
+    /**
+     * Writes an auction archived by a mutation read from the log to the archive,
+     * if the replica stopped before it was written there. If that fails the replica is not started.
+     * @param mutation the mutation read from the log
+     */
+    private void recovered(Mutation mutation)
+    {
+        if(mutation.getType() != Mutation.Type.AUCTION_ARCHIVED || this.archive.get(mutation.getKey()) != null)
+            return;
+        try {
+            archive(mutation);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the auction and the bid history of a mutation that archived an auction to the archive
+     * @param mutation the mutation that archived the auction
+     * @throws IOException if the archive can not be written
+     */
+    private void archive(Mutation mutation) throws IOException
+    {
+        this.archive.put(mutation.getAuction(), mutation.getBidHistory());
+    }
+
+    /**
+     * Stops the replica after a failure that leaves its files behind its state. No write request is executed
+     * and no snapshot is started from then on, and the replica leaves the cluster from an other thread,
+     * since the thread that failed may be the one that delivers the messages.
+     * @param reason why the replica is stopped
+     */
+    private void stop(String reason)
+    {
+        if(this.stopped)
+            return;
+        this.stopped = true;
+        System.out.println("[REPLICA] " + reason + ". The replica is stopped");
+        new Thread(this::close, "replica-stop").start();
+    }
+
+    /**
+     * Writes the credentials of the clients received with the state to the credential store,
+     * empties the key cache, the keys may belong to clients that registered again,
+     * and replaces the snapshot and the log with the new state.
+     */
+    @Override
+    protected void stateReplaced()
+    {
+        reconcile();
+        this.snapshotSequence = myState.getSequence();
+        try {
+            this.log.reset(myState);
+        } catch (IOException e) {
+            System.out.println("[REPLICA] Failed to write the state to the log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the credentials of the registered clients that are missing from the credential store,
+     * empties the key cache and fills the timing wheel with the active auctions, after the state is replaced or recovered.
+     */
+    private void reconcile()
+    {
+        if(this.credentialStore != null)
+            this.credentialStore.putAll(myState.getRegisteredClients());
+        this.keyCache.clear();
+        this.expiry.clear();
+        this.overdue.clear();
+        for(Auction auction : myState.getActiveAuctions().values())
+            if(auction.getEndTime() != 0)
+                this.expiry.schedule(auction.getAuctionID(), auction.getEndTime());
+    }
+
+    /**
+     * Sends mutations that are already committed as one message to the other cluster members.
+     * Must be called while holding the lock of the state so that the messages leave in sequence order.
+     * @param mutations the changes to send
+     */
+    private void multicast(List<Mutation> mutations)
+    {
+        if(mutations.isEmpty())
+            return;
+        try {
+            int size = 4;
+            for(Mutation mutation : mutations)
+                size += mutation.size();
+            ByteArrayDataOutputStream out = new ByteArrayDataOutputStream(size);
+            Mutation.writeBatch(mutations,out);
+            this.channelB.send(new Message(null,out.buffer(),0,out.position()));
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -398,8 +1360,24 @@ public class Auction_Server_Replica extends ReceiverAdapter{
 
     public void close()
     {
+        if(this.promoter != null)
+            this.promoter.shutdownNow();
+        if(this.archiver != null)
+            this.archiver.shutdownNow();
+        if(this.expirer != null)
+            this.expirer.shutdownNow();
         this.channelA.close();
-        this.channelB.close();
+        unsubscribe();
+        if(this.snapshotter != null)
+            this.snapshotter.shutdownNow();
+        try {
+            this.credentialStore.close();
+            this.archive.close();
+            this.log.close();
+            this.lockChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
 
@@ -1,4 +1,5 @@
-import java.io.Serializable;
+import org.jgroups.util.SizeStreamable;
+import java.io.*;
 import java.util.Random;
 
 /**
@@ -8,11 +9,17 @@ import java.util.Random;
  * a challenge from the receiver if not already solved one.
  * @author Emmeleia Arakleitou
  */
-public class AuthenticationReply implements Serializable {
+public class AuthenticationReply implements SizeStreamable, Externalizable {
 
     private byte[] encryptedNum;
     private int randomNumForYou;
 
+    /**
+     * Constructor with no parameters used to decode a reply from its binary form.
+     */
+    public AuthenticationReply() {
+    }
+
     /**
      * Constructor of the class that generated the random number
      * @param encryptedNum the encrypted challenge.
@@ -38,4 +45,62 @@ public class AuthenticationReply implements Serializable {
     {
         return randomNumForYou;
     }
+
+    /**
+     * Writes the reply in the binary format
+     * @param out the output to write to
+     * @throws IOException
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException
+    {
+        WireFormat.writeVersion(out);
+        WireFormat.writeBytes(encryptedNum, out);
+        out.writeInt(randomNumForYou);
+    }
+
+    /**
+     * Reads the reply from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    @Override
+    public void readFrom(DataInput in) throws IOException
+    {
+        WireFormat.readVersion(in);
+        encryptedNum = WireFormat.readBytes(in);
+        randomNumForYou = in.readInt();
+    }
+
+    /**
+     * Returns the number of bytes of the binary format
+     * @return int
+     */
+    @Override
+    public int size()
+    {
+        return 1 + 4 + (encryptedNum == null ? 0 : encryptedNum.length) + 4;
+    }
+
+    /**
+     * Java serialization of the reply, used by RMI, in the binary format
+     * @param out the output to write to
+     * @throws IOException
+     */
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException
+    {
+        writeTo(out);
+    }
+
+    /**
+     * Java deserialization of the reply from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    @Override
+    public void readExternal(ObjectInput in) throws IOException
+    {
+        readFrom(in);
+    }
 }
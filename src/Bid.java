@@ -0,0 +1,140 @@
+import org.jgroups.util.SizeStreamable;
+import org.jgroups.util.Bits;
+import java.math.BigDecimal;
+import java.io.*;
+
+/**
+ * A bid of a client for an auction. Bids are sent to the primary replica in batches
+ * and applied in the order they were received.
+ * @author Emmeleia Arakleitou
+ */
+public class Bid implements SizeStreamable, Externalizable {
+
+    private String auctionID, bidderID;
+    //in minor units, see Money
+    private long price;
+
+    /**
+     * Constructor with no parameters used to decode a bid from its binary form.
+     */
+    public Bid()
+    {
+    }
+
+    /**
+     * Constructor of the class
+     * @param price The bid
+     * @param auctionID ID of the auction
+     * @param bidderID ID of the bidder
+     * @throws ArithmeticException if the price has more than Money.SCALE decimal places
+     */
+    public Bid(BigDecimal price, String auctionID, String bidderID)
+    {
+        this(Money.toMinor(price), auctionID, bidderID);
+    }
+
+    /**
+     * Constructor of the class with the bid in minor units
+     * @param price The bid in minor units
+     * @param auctionID ID of the auction
+     * @param bidderID ID of the bidder
+     */
+    public Bid(long price, String auctionID, String bidderID)
+    {
+        this.price = price;
+        this.auctionID = auctionID;
+        this.bidderID = bidderID;
+    }
+
+    /**
+     * Accessor for the bid
+     * @return BigDecimal
+     */
+    public BigDecimal getPrice() {
+        return Money.toDecimal(price);
+    }
+
+    /**
+     * Accessor for the bid in minor units
+     * @return long
+     */
+    public long getPriceMinor() {
+        return price;
+    }
+
+    /**
+     * Accessor for the auction ID
+     * @return String
+     */
+    public String getAuctionID() {
+        return auctionID;
+    }
+
+    /**
+     * Accessor for the bidder ID
+     * @return String
+     */
+    public String getBidderID() {
+        return bidderID;
+    }
+
+    /**
+     * Writes the bid in the binary format
+     * @param out the output to write to
+     * @throws IOException
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException
+    {
+        WireFormat.writeVersion(out);
+        Bits.writeString(auctionID, out);
+        Bits.writeString(bidderID, out);
+        Bits.writeLong(price, out);
+    }
+
+    /**
+     * Reads the bid from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    @Override
+    public void readFrom(DataInput in) throws IOException
+    {
+        WireFormat.readVersion(in);
+        auctionID = Bits.readString(in);
+        bidderID = Bits.readString(in);
+        price = Bits.readLong(in);
+    }
+
+    /**
+     * Returns the number of bytes of the binary format
+     * @return int
+     */
+    @Override
+    public int size()
+    {
+        return 1 + Bits.size(auctionID) + Bits.size(bidderID) + Bits.size(price);
+    }
+
+    /**
+     * Java serialization of the bid, used by the cluster calls, in the binary format
+     * @param out the output to write to
+     * @throws IOException
+     */
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException
+    {
+        writeTo(out);
+    }
+
+    /**
+     * Java deserialization of the bid from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    @Override
+    public void readExternal(ObjectInput in) throws IOException
+    {
+        readFrom(in);
+    }
+}
@@ -0,0 +1,54 @@
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput of the bid pipeline. Start the replicas first, then run this class,
+ * which joins the cluster as a front-end server, creates some auctions and lets a number of
+ * threads place increasing bids on them.
+ * Usage: BidBenchmark [threads] [auctions] [seconds]
+ * @author Emmeleia Arakleitou
+ */
+public class BidBenchmark {
+
+    public static void main(String[] args) throws Exception
+    {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int auctions = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        final Auction_RemoteService server = new Auction_RemoteService();
+        final String[] auctionIDs = new String[auctions];
+        for(int i = 0; i < auctions; i++)
+            auctionIDs[i] = server.createNewAuction("Item " + i, BigDecimal.ONE, BigDecimal.ONE, "0");
+
+        final AtomicLong price = new AtomicLong(1);
+        final AtomicLong bids = new AtomicLong();
+        final long end = System.currentTimeMillis() + seconds * 1000L;
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for(int t = 0; t < threads; t++)
+        {
+            final String bidderID = Integer.toString(t);
+            new Thread(() -> {
+                try {
+                    int i = 0;
+                    while (System.currentTimeMillis() < end)
+                    {
+                        String auctionID = auctionIDs[i++ % auctionIDs.length];
+                        server.bidFromItem(BigDecimal.valueOf(price.incrementAndGet()), auctionID, bidderID);
+                        bids.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        System.out.println(threads + " threads placed " + bids.get() + " bids in " + seconds + "s: "
+                + (bids.get() / seconds) + " bids/s");
+        System.exit(0);
+    }
+}
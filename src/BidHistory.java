@@ -0,0 +1,233 @@
+import org.jgroups.util.SizeStreamable;
+import org.jgroups.util.Bits;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.io.*;
+
+/**
+ * The accepted bids of an auction, in the order they were accepted. Bids are only appended.
+ * The price (in minor units), the ID of the bidder and the time of every bid are kept in three arrays
+ * of longs instead of a list of objects, so a bid takes 24 bytes once the arrays are trimmed
+ * when the auction is closed.
+ * @author Emmeleia Arakleitou
+ */
+public class BidHistory implements SizeStreamable, Externalizable {
+
+    private static final long[] EMPTY = new long[0];
+    private static final int INITIAL_CAPACITY = 4;
+    private long[] prices = EMPTY, bidderIDs = EMPTY, times = EMPTY;
+    private int size;
+    //a snapshot shares the arrays with the history it was taken from and copies them before an append.
+    private boolean shared;
+
+    /**
+     * Constructor with no parameters, creates a history with no bids. Also used to decode a history from its binary form.
+     */
+    public BidHistory()
+    {
+    }
+
+    /**
+     * Returns the ID of a bidder as it is kept in the history
+     * @param bidderID ID of the bidder
+     * @return the ID, or -1 if the ID is not a number
+     */
+    public static long bidderID(String bidderID)
+    {
+        try {
+            return bidderID == null ? -1 : Long.parseLong(bidderID.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Appends an accepted bid
+     * @param price the bid in minor units
+     * @param bidderID ID of the bidder
+     * @param time the time the bid was accepted, in milliseconds since the epoch
+     */
+    public void append(long price, long bidderID, long time)
+    {
+        if(shared || size == prices.length)
+            resize(Math.max(INITIAL_CAPACITY, size + (size >> 1) + 1));
+        prices[size] = price;
+        bidderIDs[size] = bidderID;
+        times[size] = time;
+        size++;
+    }
+
+    /**
+     * Removes the unused capacity of the arrays, used when no more bids can be appended
+     */
+    public void trimToSize()
+    {
+        if(size < prices.length)
+            resize(size);
+    }
+
+    /**
+     * Copies the bids to arrays of a new capacity
+     * @param capacity the new capacity
+     */
+    private void resize(int capacity)
+    {
+        prices = capacity == 0 ? EMPTY : Arrays.copyOf(prices, capacity);
+        bidderIDs = capacity == 0 ? EMPTY : Arrays.copyOf(bidderIDs, capacity);
+        times = capacity == 0 ? EMPTY : Arrays.copyOf(times, capacity);
+        shared = false;
+    }
+
+    /**
+     * Returns a copy of the history in constant time. The copy holds the bids appended so far
+     * and is not changed by the bids appended later.
+     * @return BidHistory
+     */
+    public BidHistory snapshot()
+    {
+        BidHistory snapshot = new BidHistory();
+        snapshot.prices = prices;
+        snapshot.bidderIDs = bidderIDs;
+        snapshot.times = times;
+        snapshot.size = size;
+        snapshot.shared = true;
+        return snapshot;
+    }
+
+    /**
+     * Returns the number of bids
+     * @return int
+     */
+    public int getBidCount() {
+        return size;
+    }
+
+    /**
+     * Returns the price of a bid
+     * @param index the position of the bid, the first bid is 0
+     * @return BigDecimal
+     */
+    public BigDecimal getPrice(int index) {
+        return Money.toDecimal(getPriceMinor(index));
+    }
+
+    /**
+     * Returns the price of a bid in minor units
+     * @param index the position of the bid, the first bid is 0
+     * @return long
+     */
+    public long getPriceMinor(int index) {
+        checkIndex(index);
+        return prices[index];
+    }
+
+    /**
+     * Returns the ID of the bidder of a bid
+     * @param index the position of the bid, the first bid is 0
+     * @return String
+     */
+    public String getBidderID(int index) {
+        checkIndex(index);
+        return Long.toString(bidderIDs[index]);
+    }
+
+    /**
+     * Returns the time a bid was accepted
+     * @param index the position of the bid, the first bid is 0
+     * @return the time in milliseconds since the epoch
+     */
+    public long getTime(int index) {
+        checkIndex(index);
+        return times[index];
+    }
+
+    /**
+     * Returns the number of bytes taken by the arrays of the history
+     * @return long
+     */
+    public long getMemoryUsage() {
+        return 3L * 8 * prices.length;
+    }
+
+    /**
+     * Checks that a bid exists
+     * @param index the position of the bid
+     */
+    private void checkIndex(int index)
+    {
+        if(index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Bid " + index + " of " + size);
+    }
+
+    /**
+     * Writes the history in the binary format
+     * @param out the output to write to
+     * @throws IOException
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException
+    {
+        WireFormat.writeVersion(out);
+        out.writeInt(size);
+        for(int i = 0; i < size; i++)
+        {
+            Bits.writeLong(prices[i], out);
+            Bits.writeLong(bidderIDs[i], out);
+            Bits.writeLong(times[i], out);
+        }
+    }
+
+    /**
+     * Reads the history from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    @Override
+    public void readFrom(DataInput in) throws IOException
+    {
+        WireFormat.readVersion(in);
+        size = 0;
+        shared = false;
+        int bids = in.readInt();
+        prices = bids == 0 ? EMPTY : new long[bids];
+        bidderIDs = bids == 0 ? EMPTY : new long[bids];
+        times = bids == 0 ? EMPTY : new long[bids];
+        for(int i = 0; i < bids; i++)
+            append(Bits.readLong(in), Bits.readLong(in), Bits.readLong(in));
+    }
+
+    /**
+     * Returns the number of bytes of the binary format
+     * @return int
+     */
+    @Override
+    public int size()
+    {
+        int size = 1 + 4;
+        for(int i = 0; i < this.size; i++)
+            size += Bits.size(prices[i]) + Bits.size(bidderIDs[i]) + Bits.size(times[i]);
+        return size;
+    }
+
+    /**
+     * Java serialization of the history, used by the cluster calls and RMI, in the binary format
+     * @param out the output to write to
+     * @throws IOException
+     */
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException
+    {
+        writeTo(out);
+    }
+
+    /**
+     * Java deserialization of the history from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    @Override
+    public void readExternal(ObjectInput in) throws IOException
+    {
+        readFrom(in);
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+
+/**
+ * Measures the heap retained per bid by the bid histories, while the auctions are active
+ * and after they are closed and the histories are trimmed, compared to a list of Bid objects.
+ * Usage: BidHistoryBenchmark [auctions] [bidsPerAuction]
+ * @author Emmeleia Arakleitou
+ */
+public class BidHistoryBenchmark {
+
+    public static void main(String[] args) throws Exception
+    {
+        int auctions = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int bidsPerAuction = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        long bids = (long) auctions * bidsPerAuction;
+
+        long before = usedMemory();
+        BidHistory[] histories = new BidHistory[auctions];
+        for(int i = 0; i < auctions; i++)
+        {
+            histories[i] = new BidHistory();
+            for(int b = 0; b < bidsPerAuction; b++)
+                histories[i].append(10000 + b, 1000 + b % 50, 1500000000000L + b);
+        }
+        long active = usedMemory() - before;
+        for(BidHistory history : histories)
+            history.trimToSize();
+        long closed = usedMemory() - before;
+        long arrays = 0;
+        for(BidHistory history : histories)
+            arrays += history.getMemoryUsage();
+        histories = null;
+
+        before = usedMemory();
+        ArrayList<ArrayList<Bid>> lists = new ArrayList<>(auctions);
+        for(int i = 0; i < auctions; i++)
+        {
+            ArrayList<Bid> list = new ArrayList<>();
+            String auctionID = Integer.toString(i);
+            for(int b = 0; b < bidsPerAuction; b++)
+                list.add(new Bid(10000 + b, auctionID, Integer.toString(1000 + b % 50)));
+            list.trimToSize();
+            lists.add(list);
+        }
+        long objects = usedMemory() - before;
+
+        System.out.format("%-34s%14s%n", "Bids: " + bids, "Heap (B/bid)");
+        System.out.format("%-34s%14d%n", "BidHistory, active", active / bids);
+        System.out.format("%-34s%14d%n", "BidHistory, closed (trimmed)", closed / bids);
+        System.out.format("%-34s%14d%n", "BidHistory arrays only", arrays / bids);
+        System.out.format("%-34s%14d%n", "ArrayList<Bid> (no time)", objects / bids);
+        if(lists.size() != auctions)
+            throw new IllegalStateException();
+    }
+
+    /**
+     * Returns the heap in use after a garbage collection
+     * @return the number of bytes
+     * @throws InterruptedException
+     */
+    private static long usedMemory() throws InterruptedException
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++)
+        {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,170 @@
+import org.jgroups.util.FutureListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * This class collects the bids made on the front-end server for the auctions of a shard and sends them
+ * to the primary replica of the shard in batches. A few batches can be on their way at the same time; while they are,
+ * every new bid waits in the queue, so under load many bids share one cluster call and one multicast.
+ * The bids are sent in the order they were submitted.
+ * @author Emmeleia Arakleitou
+ */
+public class BidPipeline implements Runnable {
+
+    private static final int MAX_BATCH_SIZE = 512;
+    private static final int MAX_BATCHES_IN_FLIGHT = 4;
+    private final LinkedBlockingQueue<PendingBid> queue = new LinkedBlockingQueue<>();
+    private final Semaphore inFlight = new Semaphore(MAX_BATCHES_IN_FLIGHT);
+    private final Auction_RemoteService server;
+    private final int shard;
+
+    /**
+     * Constructor of the class that starts the thread sending the batches
+     * @param server the front-end server that sends the batches to the cluster
+     * @param shard the shard of the auctions of the bids
+     */
+    public BidPipeline(Auction_RemoteService server, int shard)
+    {
+        this.server = server;
+        this.shard = shard;
+        Thread sender = new Thread(this, "bid-pipeline-" + shard);
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Adds a bid to the next batch
+     * @param bid the bid to send
+     * @return the message of the primary indicating whether the bid is accepted,
+     * or null if the batch could not be sent
+     */
+    public CompletableFuture<String> submit(Bid bid)
+    {
+        PendingBid pending = new PendingBid(bid);
+        queue.add(pending);
+        return pending.reply;
+    }
+
+    /**
+     * Adds a list of bids to the queue at once, so they are sent together in as few batches as possible
+     * @param bids the bids to send, in order
+     * @return the messages of the primary for the bids, in the same order
+     */
+    public List<CompletableFuture<String>> submitAll(List<Bid> bids)
+    {
+        List<PendingBid> pendingBids = new ArrayList<>(bids.size());
+        List<CompletableFuture<String>> replies = new ArrayList<>(bids.size());
+        for(Bid bid : bids)
+        {
+            PendingBid pending = new PendingBid(bid);
+            pendingBids.add(pending);
+            replies.add(pending.reply);
+        }
+        queue.addAll(pendingBids);
+        return replies;
+    }
+
+    /**
+     * Waits until every bid submitted before this call has been sent to the primary.
+     * A request sent to the primary after this method returns is executed after those bids.
+     * @throws InterruptedException
+     */
+    public void flush() throws InterruptedException
+    {
+        PendingBid marker = new PendingBid(null);
+        queue.add(marker);
+        try {
+            marker.reply.get();
+        } catch (ExecutionException e) {
+            //the marker is never completed exceptionally
+        }
+    }
+
+    /**
+     * Takes the bids from the queue and sends them in batches until the thread is interrupted.
+     */
+    @Override
+    public void run()
+    {
+        List<PendingBid> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        try {
+            while (!Thread.currentThread().isInterrupted())
+            {
+                batch.add(queue.take());
+                inFlight.acquire();
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                send(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends one batch to the primary without waiting for the response.
+     * The replies of the bids are completed when the response arrives.
+     * @param batch the bids to send, including the flush markers
+     */
+    private void send(List<PendingBid> batch)
+    {
+        final List<PendingBid> bidsSent = new ArrayList<>(batch.size());
+        ArrayList<Bid> bids = new ArrayList<>(batch.size());
+        for(PendingBid pending : batch)
+        {
+            if(pending.bid != null) {
+                bidsSent.add(pending);
+                bids.add(pending.bid);
+            }
+        }
+
+        if(bids.isEmpty())
+            inFlight.release();
+        else {
+            try {
+                server.sendBids(shard, bids, new FutureListener<ArrayList<String>>() {
+                    @Override
+                    public void futureDone(Future<ArrayList<String>> future) {
+                        inFlight.release();
+                        ArrayList<String> replies = null;
+                        try {
+                            replies = future.get();
+                        } catch (Exception e) {
+                            System.out.println("[SERVER] Failed to connect to cluster!!");
+                        }
+                        for(int i = 0; i < bidsSent.size(); i++)
+                            bidsSent.get(i).reply.complete(replies == null ? null : replies.get(i));
+                    }
+                });
+            } catch (Exception e) {
+                inFlight.release();
+                System.out.println("[SERVER] Failed to connect to cluster!!");
+                for(PendingBid pending : bidsSent)
+                    pending.reply.complete(null);
+            }
+        }
+
+        //the bids before the markers have left, so the markers can be released.
+        for(PendingBid pending : batch)
+            if(pending.bid == null)
+                pending.reply.complete(null);
+    }
+
+    /**
+     * A bid waiting in the queue together with the reply for the client.
+     * A pending bid without a bid is a marker used by flush.
+     */
+    private static class PendingBid {
+        private final Bid bid;
+        private final CompletableFuture<String> reply = new CompletableFuture<>();
+
+        private PendingBid(Bid bid) {
+            this.bid = bid;
+        }
+    }
+}
@@ -11,12 +11,11 @@ import java.util.Scanner;
  */
 public class Buyer extends Client {
 
-    private final String serverURL = "rmi://localhost/AuctioningServer";
     private HashMap<String,Auction> myAuctions;
-    private Server_Interface remoteService;
-    private String choice;
-    private char choice2;
-    private Scanner in;
+    private transient Server_Interface remoteService;
+    private transient String choice;
+    private transient char choice2;
+    private transient Scanner in;
 
     /**
      * Constructor of the class that calls the constructor of the superclass Client
@@ -28,12 +27,19 @@ public class Buyer extends Client {
 
         super(name,email,userPass);
         myAuctions = new HashMap<>();
-        this.remoteService = this.connectToRMI(serverURL);
+        this.remoteService = this.connectToRMI(FrontEndBalancer.FRONT_ENDS);
         createClientID();
-        this.writeKeys(this);
 
     }
 
+    /**
+     * Constructor used to decode a buyer from its binary form, does not connect to the server.
+     */
+    Buyer() {
+        super(null,null,null);
+        myAuctions = new HashMap<>();
+    }
+
     /**
      * This method lists all the actions that the seller can take
      * and includes a recursive call when the input is not valid
@@ -84,19 +90,16 @@ public class Buyer extends Client {
         if(choice == 'A')
         {
             //prints the list with all the active auctions
-            displayActiveAuctions(remoteService.getActiveAuctions());
+            browseActiveAuctions(getRemoteService(),null,in);
         }
         else if(choice == 'B')
         {
-            //check if there are any active auctions to bid
-            if(remoteService.getActiveAuctions().isEmpty())
-                System.out.println("There are no active auction to bid. You will be notified when an item is added.");
-            else{
-                displayActiveAuctions(remoteService.getActiveAuctions());
+            //check if there are any active auctions to bid, the message is printed by browseActiveAuctions
+            if(!browseActiveAuctions(getRemoteService(),null,in)){
                 System.out.println("To Bid for an item you must enter the auction ID and the amount that you are willing to give for the item.");
                 auctionID = in.next();
 
-                exists = remoteService.validateAuctionID(auctionID,remoteService.getActiveAuctions());
+                exists = getRemoteService().auctionExists(auctionID);
 
                 //while the auctionID is not valid require a new action ID
                 while (!exists)
@@ -104,7 +107,7 @@ public class Buyer extends Client {
                     System.out.println("The auction ID provided does not belong to any of the current active auctions.");
                     System.out.println("Please give a new auctionID");
                     auctionID = in.next();
-                    exists = remoteService.validateAuctionID(auctionID,remoteService.getActiveAuctions());
+                    exists = getRemoteService().auctionExists(auctionID);
                 }
 
                 System.out.println("Give your bid : ");
@@ -115,7 +118,7 @@ public class Buyer extends Client {
                     if(in.hasNextBigDecimal())
                     {
                         bid = in.nextBigDecimal();
-                        if(bid.compareTo(BigDecimal.ZERO) <0 ||(bid.compareTo(remoteService.getActiveAuctions().get(auctionID).getStartingPrice()) < 0))
+                        if(bid.compareTo(BigDecimal.ZERO) <0 ||(bid.compareTo(getRemoteService().getActiveAuction(auctionID).getStartingPrice()) < 0))
                             System.out.println("The bid must be greater than 0 and greater than the starting value. Please try again");
                         else
                             notNumber = false;
@@ -125,21 +128,24 @@ public class Buyer extends Client {
                     }
                 }
                 //make the bid.
-                bidMessage = remoteService.bidFromItem(bid,auctionID,getUserID());
+                bidMessage = getRemoteService().bidFromItem(bid,auctionID,getUserID());
                 System.out.println(bidMessage);
                 //Add the action the buyer's action list
-                myAuctions.put(auctionID,remoteService.getActiveAuctions().get(auctionID));
+                myAuctions.put(auctionID,getRemoteService().getActiveAuction(auctionID));
                 System.out.println("You will be notified when the auction is closed and he winner will be announced ");
             }
         }
     }
 
     /**
-     * Accessor for the remote object
+     * Accessor for the remote object. A buyer received from the server
+     * connects to the server the first time the remote object is used.
      * @return remoteService
      */
     public Server_Interface getRemoteService()
     {
+        if(remoteService == null)
+            remoteService = this.connectToRMI(FrontEndBalancer.FRONT_ENDS);
         return remoteService;
     }
 
@@ -1,5 +1,5 @@
+import java.rmi.server.UnicastRemoteObject;
 import java.rmi.RemoteException;
-import java.util.HashMap;
 import java.util.Scanner;
 import java.util.Map;
 
@@ -89,58 +89,81 @@ public class BuyerDriver {
             System.exit(0);
 
         Server_Interface remoteService = myBuyer.getRemoteService();
+        BuyerListener listener = subscribe(remoteService, myBuyer);
         buyerChoice = myBuyer.listBuyerOptions();
-        int num = 0;
         while (buyerChoice!='C')
         {
             myBuyer.takeAction(buyerChoice);
             buyerChoice = myBuyer.listBuyerOptions();
-            num = iAmWinner(remoteService, remoteService.getClosedAuctions(),myBuyer,num);
+            //without notifications the closed auctions are checked after every action.
+            if(listener == null)
+                iAmWinner(remoteService, myBuyer);
         }
 
+        if(listener != null)
+        {
+            remoteService.unsubscribe(myBuyer.getUserID());
+            UnicastRemoteObject.unexportObject(listener, true);
+        }
         System.out.println();
     }
 
+    /**
+     * Subscribes the buyer to the auctions it bids for, so that the server tells the buyer
+     * when one of them is closed.
+     * @param remoteService The remote object used to invoke methods in the interface
+     * @param myBuyer The buyer to notify
+     * @return the listener of the buyer, or null if the server can not notify the buyer
+     */
+    public static BuyerListener subscribe(Server_Interface remoteService, Buyer myBuyer)
+    {
+        BuyerListener listener = null;
+        try {
+            listener = new BuyerListener(myBuyer.getUserID());
+            remoteService.subscribe(myBuyer.getUserID(), listener);
+            return listener;
+        } catch (RemoteException e) {
+            System.out.println("Notifications are not available, the closed auctions will be checked after every action.");
+            if(listener != null)
+                try {
+                    UnicastRemoteObject.unexportObject(listener, true);
+                } catch (RemoteException re) {
+                    re.printStackTrace();
+                }
+            return null;
+        }
+    }
+
     /**
      * This method is used to validate if this buyer is the winner of a closed auction.
+     * Every auction the buyer bid for that is still active for the buyer is looked up by its ID,
+     * so the auctions closed long ago are found too.
      * @param remoteService The remote object used to invoke methods in the interface
-     * @param closedAuctions Hash<ap with the closed auctions
      * @param myBuyer The buyer to check if is the winner
-     * @param previousClosedNum An int to that holds the number of the previous number of closed auctions
-     * @return
      * @throws RemoteException
      */
-    public static int iAmWinner(Server_Interface remoteService, HashMap<String,Auction> closedAuctions, Buyer myBuyer, int previousClosedNum) throws RemoteException
+    public static void iAmWinner(Server_Interface remoteService, Buyer myBuyer) throws RemoteException
     {
-        //If there one or more auction is closed
-        if(  previousClosedNum  < closedAuctions.size() )
-        {
-
-            previousClosedNum = closedAuctions.size();
-            for (Map.Entry<String,Auction> pair : closedAuctions.entrySet()){
-                Auction auction = pair.getValue();
-                String auctionID = auction.getAuctionID();
-                //for every entry in the hashMap check if this buyer placed a bid in this auction
-                if(myBuyer.getMyAuctions().containsKey(auctionID)) {
-
-                    //If auction status in Active -> The auctions is closed and the winner was not announced
-                    if( myBuyer.getMyAuctions().get(auctionID).getAuctionStatus().equals("Active"))
-                    {
-                        Buyer winner = (Buyer) remoteService.announceWinner(auctionID);
-
-                        if (winner == null)
-                            System.out.println("There is no winner because the reserved price was not met!" + '\n');
-                        else if (auction.getHighestBidderID().equals(myBuyer.getUserID()) && auction.getReservedPrice().compareTo(auction.getHighestBid()) <0 )
-                            System.out.println("You are the winner of auction with auctionID " + auction.getAuctionID() + '\n');
-                        else
-                            System.out.println("Auction " + auctionID + " is now closed but you are not the winner!! " + '\n');
-
-                        //set status to closed so that the winner for this auction won't be announced again.
-                        myBuyer.getMyAuctions().get(auctionID).setAuctionStatus("Closed");
-                    }
-                }
-            }
+        for (Map.Entry<String,Auction> pair : myBuyer.getMyAuctions().entrySet()){
+            String auctionID = pair.getKey();
+            //If auction status in Active -> the winner of the auction was not announced to this buyer
+            if(!pair.getValue().getAuctionStatus().equals("Active"))
+                continue;
+            Auction auction = remoteService.getClosedAuction(auctionID);
+            if(auction == null)
+                continue;
+
+            Buyer winner = (Buyer) remoteService.announceWinner(auctionID);
+
+            if (winner == null)
+                System.out.println("There is no winner because the reserved price was not met!" + '\n');
+            else if (auction.getHighestBidderID().equals(myBuyer.getUserID()) && auction.getReservedPrice().compareTo(auction.getHighestBid()) <0 )
+                System.out.println("You are the winner of auction with auctionID " + auction.getAuctionID() + '\n');
+            else
+                System.out.println("Auction " + auctionID + " is now closed but you are not the winner!! " + '\n');
+
+            //set status to closed so that the winner for this auction won't be announced again.
+            pair.getValue().setAuctionStatus("Closed");
         }
-        return previousClosedNum;
     }
 }
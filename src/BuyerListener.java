@@ -0,0 +1,55 @@
+import java.rmi.server.UnicastRemoteObject;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * This class is exported by the buyer so that the server can tell the buyer
+ * when it is outbid, when the price of an auction it bid for changes,
+ * and when the auction is closed and whether the buyer is the winner.
+ * @author Emmeleia Arakleitou
+ */
+public class BuyerListener extends UnicastRemoteObject implements AuctionListener {
+
+    private final String buyerID;
+
+    /**
+     * Constructor of the class that exports the listener
+     * @param buyerID ID of the buyer
+     * @throws RemoteException
+     */
+    public BuyerListener(String buyerID) throws RemoteException
+    {
+        super();
+        this.buyerID = buyerID;
+    }
+
+    /**
+     * Prints the result of an auction the buyer bid for
+     * @param event the change
+     */
+    @Override
+    public void onAuctionEvent(AuctionEvent event)
+    {
+        if(event.getType() == AuctionEvent.Type.OUTBID)
+            System.out.println('\n' + "You have been outbid in auction " + event.getAuctionID() + ". The highest bid is now " + event.getHighestBid() + '\n');
+        else if(event.getType() == AuctionEvent.Type.PRICE_CHANGED)
+            System.out.println('\n' + "The highest bid of auction " + event.getAuctionID() + " is now " + event.getHighestBid() + '\n');
+        else if (event.getWinnerID() == null)
+            System.out.println('\n' + "Auction " + event.getAuctionID() + " is now closed. There is no winner because the reserved price was not met!" + '\n');
+        else if (event.getWinnerID().equals(this.buyerID))
+            System.out.println('\n' + "You are the winner of auction with auctionID " + event.getAuctionID() + '\n');
+        else
+            System.out.println('\n' + "Auction " + event.getAuctionID() + " is now closed but you are not the winner!! " + '\n');
+    }
+
+    /**
+     * Prints the changes of the prices of the auctions the buyer bid for
+     * @param events the changes
+     */
+    @Override
+    public void onAuctionEvents(List<AuctionEvent> events)
+    {
+        for(AuctionEvent event : events)
+            onAuctionEvent(event);
+    }
+}
@@ -0,0 +1,193 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class represents the copy of the catalogue of a shard that the front-end server keeps in memory.
+ * It joins the MY_SECOND_CLUSTER of the shard like a backup replica, receives the state and then applies every mutation
+ * multicast by the primary, so the listings are served without a round trip to the cluster.
+ * The version of the cache is the sequence number of the last mutation it applied.
+ * The mutations are also passed to the notifier, which pushes the changes to the clients.
+ * @author Emmeleia Arakleitou
+ */
+public class CatalogueCache extends StateSubscriber {
+
+    private final AuctionNotifier notifier;
+    private volatile boolean ready;
+
+    /**
+     * Constructor of the class
+     * @param notifier notified of the changes of the auctions
+     * @param shard the shard of the auctions
+     */
+    public CatalogueCache(AuctionNotifier notifier, int shard)
+    {
+        super(shard);
+        this.notifier = notifier;
+    }
+
+    /**
+     * Subscribes to the stream of mutations. If that fails the cache stays empty and is not used.
+     */
+    public void start()
+    {
+        try {
+            subscribe(null);
+            this.ready = true;
+        } catch (Exception e)
+        {
+            System.out.println("[SERVER] Failed to load the catalogue, the listings are read from the cluster");
+        }
+    }
+
+    /**
+     * Checks if the cache has received the state and follows the mutations of the primary
+     * @return true if the cache can serve reads
+     */
+    public boolean isReady()
+    {
+        return this.ready;
+    }
+
+    /**
+     * Accessor for the version of the cache
+     * @return the sequence number of the last mutation applied
+     */
+    public long getVersion()
+    {
+        synchronized (myState)
+        {
+            return myState.getSequence();
+        }
+    }
+
+    /**
+     * Accessor for activeAuctions
+     * @return a copy of the active auctions held in the cache
+     */
+    public HashMap<String,Auction> getActiveAuctions()
+    {
+        synchronized (myState)
+        {
+            return new HashMap<>(myState.getActiveAuctions());
+        }
+    }
+
+    /**
+     * Checks if the ID belongs to an active auction held in the cache
+     * @param auctionID ID of the auction
+     * @return true if the auction is active otherwise returns false
+     */
+    public boolean auctionExists(String auctionID)
+    {
+        synchronized (myState)
+        {
+            return myState.getActiveAuctions().containsKey(auctionID);
+        }
+    }
+
+    /**
+     * Returns an active auction held in the cache
+     * @param auctionID ID of the auction
+     * @return the auction, or null if there is no active auction with that ID
+     */
+    public Auction getActiveAuction(String auctionID)
+    {
+        synchronized (myState)
+        {
+            return myState.getActiveAuctions().get(auctionID);
+        }
+    }
+
+    /**
+     * Checks if the cache holds an auction, active or closed. The archived auctions are only held by the replicas.
+     * @param auctionID ID of the auction
+     * @return true if the auction is in the cache
+     */
+    public boolean holdsAuction(String auctionID)
+    {
+        synchronized (myState)
+        {
+            return myState.getActiveAuctions().containsKey(auctionID) || myState.getClosedAuctions().containsKey(auctionID);
+        }
+    }
+
+    /**
+     * Returns the accepted bids of an auction held in the cache
+     * @param auctionID ID of the auction
+     * @return a snapshot of the bid history, or null if no bid was accepted for that auction
+     */
+    public BidHistory getBidHistory(String auctionID)
+    {
+        synchronized (myState)
+        {
+            BidHistory history = myState.getBidHistories().get(auctionID);
+            return history == null ? null : history.snapshot();
+        }
+    }
+
+    /**
+     * Returns a page of the active auctions held in the cache
+     * @param pageSize the maximum number of auctions of the page
+     * @param cursor the cursor returned with the previous page or null for the first page
+     * @param sellerID only the auctions of this seller are listed, or all of them if null
+     * @param order the order of the auctions
+     * @return AuctionPage
+     */
+    public AuctionPage getActiveAuctionsPage(int pageSize, String cursor, String sellerID, AuctionOrder order)
+    {
+        synchronized (myState)
+        {
+            return AuctionPage.select(myState.getActiveAuctions().values(),pageSize,cursor,sellerID,order);
+        }
+    }
+
+    /**
+     * Passes the changes of the auctions to the notifier: the sellers and the bidders, including the bidders
+     * whose bid was rejected, become participants of the auctions and the participants are notified of the new bids and when an auction is closed.
+     * @param mutation the mutation that was applied
+     */
+    @Override
+    protected void applied(Mutation mutation)
+    {
+        switch (mutation.getType())
+        {
+            case AUCTION_CREATED:
+                this.notifier.participate(mutation.getAuction());
+                break;
+            case BID_ACCEPTED:
+                this.notifier.bidAccepted(mutation.getKey(), mutation.getPrice(), mutation.getBidderID());
+                break;
+            case PARTICIPANT_ADDED:
+                this.notifier.participate(mutation.getKey(), mutation.getBidderID());
+                break;
+            case AUCTION_CLOSED:
+                Auction auction = myState.getClosedAuctions().get(mutation.getKey());
+                if(auction != null)
+                    this.notifier.closed(auction);
+                break;
+        }
+    }
+
+    /**
+     * Records the sellers and the bidders of the active auctions received with the state as participants
+     */
+    @Override
+    protected void stateReplaced()
+    {
+        for(Auction auction : myState.getActiveAuctions().values())
+            this.notifier.participate(auction);
+        for(Map.Entry<String,Set<String>> entry : myState.getParticipants().entrySet())
+            for(String clientID : entry.getValue())
+                this.notifier.participate(entry.getKey(), clientID);
+    }
+
+    /**
+     * Leaves MY_SECOND_CLUSTER, after that the listings are read from the cluster.
+     */
+    public void close()
+    {
+        this.ready = false;
+        unsubscribe();
+    }
+}
@@ -1,11 +1,10 @@
 import java.security.NoSuchAlgorithmException;
 import java.security.InvalidKeyException;
 import javax.crypto.spec.SecretKeySpec;
-import java.net.MalformedURLException;
-import java.rmi.NotBoundException;
+import org.jgroups.util.Bits;
 import java.rmi.RemoteException;
 import java.security.Key;
-import java.rmi.Naming;
+import java.text.SimpleDateFormat;
 import javax.crypto.*;
 import java.util.*;
 import java.io.*;
@@ -17,9 +16,11 @@ import java.io.*;
  */
 public class Client implements Serializable{
 
+    private static final byte CLIENT = 0, BUYER = 1, SELLER = 2, NULL = -1;
+    private static final int PAGE_SIZE = 20;
     private String name, email,userID,userPass;
-    private Server_Interface remoteService;
-    private String serverURL = "rmi://localhost/AuctioningServer";
+    private transient Server_Interface remoteService;
+    private transient String serverURL = FrontEndBalancer.FRONT_ENDS;
 
     /**
      * Constructor of the class
@@ -40,38 +41,25 @@ public class Client implements Serializable{
     }
 
     /**
-     * This method connects the client to the remote object
-     * @param serverURL The URL to the remoteServer.
+     * This method connects the client to the remote object. The calls of the remote object
+     * are balanced over the front-end servers of the list.
+     * @param serverURL The URLs of the front-end servers separated by commas.
      * @return a reference to the remote object.
      */
     public Server_Interface connectToRMI(String serverURL) {
 
-        try {
-            //Lookup the remote service in the registry.
-            remoteService = (Server_Interface) Naming.lookup(serverURL);
-        } catch (NotBoundException nBe) {
-            System.out.println("The name you try to lookup has no bind in the registry");
-            nBe.printStackTrace();
-
-        } catch (MalformedURLException
-                 | RemoteException mURLe) {
-            mURLe.printStackTrace();
-        }
+        remoteService = FrontEndBalancer.connect(serverURL);
         return remoteService;
     }
 
     /**
-     * Creates and returns a random ID for the user
+     * Registers the user and returns the ID given to the user by the server
      * @return User's ID
      * @throws RemoteException ex
      */
     public String createClientID(){
-        Random rand = new Random();
-        this.userID =  Integer.toString(rand.nextInt(1000) + 1);
-        //checks if user id already assigned.
         try {
-            while (remoteService.validateClientID(userID,this))
-                this.userID =  Integer.toString(rand.nextInt(1000) + 1);
+            this.userID = remoteService.registerClient(this);
         }catch (RemoteException re) {
                 re.printStackTrace();
         }
@@ -93,17 +81,58 @@ public class Client implements Serializable{
         }
         else{
             System.out.println("These are the current active Auctions" + '\n');
-            System.out.format("%-25s%-60s%-25s%-25s%n","AuctionID" , "Item Description" ,"Starting Price" , "Highest Bid" );
-            for (Map.Entry<String,Auction> pair : activeAuctions.entrySet()){
-                Auction a = pair.getValue();
-                System.out.format("%-25s%-60s%-25s%-25s%n", pair.getKey() , a.getItemDesc() , a.getStartingPrice() ,  a.getHighestBid() );
-                isEmpty = false;
-            }
-            System.out.println();
+            printAuctions(activeAuctions.values());
         }
         return isEmpty;
     }
 
+    /**
+     * Prints the active auctions one page at a time. After each page the user can ask for the next one,
+     * so only the auctions that are printed are sent by the server. The answer is read as a whole line,
+     * so the next input of the user, such as an auction ID, is not consumed.
+     * Prints a message if there are no active auctions, the callers do not print an other one.
+     * @param remoteService the remote object
+     * @param sellerID only the auctions of this seller are printed, or all of them if null
+     * @param in the input of the user
+     * @return true if there are no active auctions
+     * @throws RemoteException ex
+     */
+    public boolean browseActiveAuctions(Server_Interface remoteService, String sellerID, Scanner in) throws RemoteException
+    {
+        AuctionPage page = remoteService.getActiveAuctionsPage(PAGE_SIZE,null,sellerID,AuctionOrder.AUCTION_ID);
+        if(page == null || page.getAuctions().isEmpty())
+        {
+            System.out.println("There are no active Auctions at the moment");
+            return true;
+        }
+        System.out.println("These are the current active Auctions" + '\n');
+        printAuctions(page.getAuctions());
+        while (page != null && page.hasNextPage())
+        {
+            System.out.println("Enter N to see the next page or press Enter to continue");
+            if(!in.nextLine().trim().equalsIgnoreCase("N"))
+                break;
+            page = remoteService.getActiveAuctionsPage(PAGE_SIZE,page.getNextCursor(),sellerID,AuctionOrder.AUCTION_ID);
+            if(page != null)
+                printAuctions(page.getAuctions());
+        }
+        return false;
+    }
+
+    /**
+     * Prints a table of auctions
+     * @param auctions the auctions to print
+     */
+    private void printAuctions(Collection<Auction> auctions)
+    {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        System.out.format("%-25s%-60s%-25s%-25s%-25s%n","AuctionID" , "Item Description" ,"Starting Price" , "Highest Bid" , "Ends" );
+        for (Auction a : auctions)
+            System.out.format("%-25s%-60s%-25s%-25s%-25s%n", a.getAuctionID() , a.getItemDesc() , a.getStartingPrice() ,  a.getHighestBid() ,
+                    a.getEndTime() == 0 ? "-" : format.format(new Date(a.getEndTime())) );
+        System.out.println();
+    }
+
     /**
      * Provides clients a menu to login or create an account!
      * @return user's choice
@@ -216,24 +245,6 @@ public class Client implements Serializable{
         return userName;
     }
 
-    /**
-     * Function that writes the secret keys(passwords) to a file.
-     * @param client
-     */
-    public void writeKeys(Client client)
-    {
-        try{
-            //initialize a BuffeWriter and write in the file the username and password. The File is named after the user name
-            //for later identification
-            BufferedWriter writer = new BufferedWriter(new FileWriter(client.getName()+ ".txt"));
-            writer.write(client.getName() + "," + client.getUserPass());
-            writer.newLine();
-            writer.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
     /**
      * Method used to authenticate the server.
      * @param userName the user name used to login
@@ -317,6 +328,102 @@ public class Client implements Serializable{
         return remoteService;
     }
 
+    /**
+     * Writes the fields of the client in the binary format
+     * @param out the output to write to
+     * @throws IOException
+     */
+    public void writeTo(DataOutput out) throws IOException
+    {
+        WireFormat.writeVersion(out);
+        Bits.writeString(userID, out);
+        Bits.writeString(name, out);
+        Bits.writeString(email, out);
+        Bits.writeString(userPass, out);
+    }
+
+    /**
+     * Reads the fields of the client from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    public void readFrom(DataInput in) throws IOException
+    {
+        WireFormat.readVersion(in);
+        userID = Bits.readString(in);
+        name = Bits.readString(in);
+        email = Bits.readString(in);
+        userPass = Bits.readString(in);
+    }
+
+    /**
+     * Returns the number of bytes written by writeTo
+     * @return int
+     */
+    public int size()
+    {
+        return 1 + Bits.size(userID) + Bits.size(name) + Bits.size(email) + Bits.size(userPass);
+    }
+
+    /**
+     * Writes a client together with its kind (buyer or seller) in the binary format
+     * @param client the client to write, can be null
+     * @param out the output to write to
+     * @throws IOException
+     */
+    public static void write(Client client, DataOutput out) throws IOException
+    {
+        if(client == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        out.writeByte(client instanceof Buyer ? BUYER : client instanceof Seller ? SELLER : CLIENT);
+        client.writeTo(out);
+    }
+
+    /**
+     * Reads a client written by the write method
+     * @param in the input to read from
+     * @return a Client, Buyer or Seller, or null
+     * @throws IOException
+     */
+    public static Client read(DataInput in) throws IOException
+    {
+        Client client;
+        byte kind = in.readByte();
+        if(kind == NULL)
+            return null;
+        else if(kind == BUYER)
+            client = new Buyer();
+        else if(kind == SELLER)
+            client = new Seller();
+        else
+            client = new Client(null,null,null);
+        client.readFrom(in);
+        return client;
+    }
+
+    /**
+     * Java serialization of the client, used by RMI and the cluster calls, in the binary format.
+     * The reference to the remote object is not sent.
+     * @param out the output to write to
+     * @throws IOException
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        writeTo(out);
+    }
+
+    /**
+     * Java deserialization of the client from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    private void readObject(ObjectInputStream in) throws IOException
+    {
+        readFrom(in);
+    }
+
     /**
      * Accessor to name variable
      * @return Client name
@@ -333,6 +440,14 @@ public class Client implements Serializable{
         return userID;
     }
 
+    /**
+     * Mutator for the UserID, the ID is given by the server when the client registers
+     * @param userID Client ID
+     */
+    public void setUserID(String userID) {
+        this.userID = userID;
+    }
+
     /**
      * Accessor for user password
      * @return string
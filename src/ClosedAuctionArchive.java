@@ -0,0 +1,272 @@
+import org.jgroups.util.ByteArrayDataOutputStream;
+import org.jgroups.util.ByteBufferInputStream;
+import org.jgroups.util.Bits;
+import java.nio.channels.FileChannel;
+import java.nio.MappedByteBuffer;
+import java.nio.ByteBuffer;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.io.*;
+
+/**
+ * The tier of the closed auctions kept on disk by every replica. Closed auctions older than
+ * auction.archive.age are moved out of the state to a segment file together with their bid history,
+ * so the heap and the state transfer depend on the active and recently closed auctions only.
+ * Records are only appended to the file and are read through a memory mapping of the file,
+ * the offset of every auction is kept in memory. A record is [length][auction ID][auction][history],
+ * the records written before the histories were archived end after the auction.
+ * A segment holds at most 2 GB of auctions.
+ * @author Emmeleia Arakleitou
+ */
+public class ClosedAuctionArchive implements Closeable {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private final File file;
+    private final FileChannel channel;
+    private final HashMap<String,Long> offsets = new HashMap<>();
+    private MappedByteBuffer mapped;
+    private long length;
+    //true while records were appended after the last force.
+    private boolean unforced;
+
+    /**
+     * Opens the archive, creating the file if it does not exist, and builds the index from the records.
+     * A record that was not completely written when the replica stopped is removed.
+     * @param file the segment file of the archive
+     * @throws IOException if the file can not be opened
+     */
+    public ClosedAuctionArchive(File file) throws IOException
+    {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(parent != null && !parent.exists() && !parent.mkdirs())
+            throw new IOException("[STORE] Can not create the directory " + parent);
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index();
+    }
+
+    /**
+     * Reads the ID of every record of the file and keeps its offset.
+     * @throws IOException
+     */
+    private void index() throws IOException
+    {
+        offsets.clear();
+        mapped = null;
+        long size = channel.size(), offset = 0;
+        if(size > Integer.MAX_VALUE)
+            throw new IOException("[STORE] " + file + " is larger than a segment");
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        while (offset + 4 <= size)
+        {
+            int recordSize = buffer.getInt((int) offset);
+            if(recordSize <= 0 || offset + 4 + recordSize > size)
+                break;
+            buffer.position((int) offset + 4);
+            offsets.put(Bits.readString(new ByteBufferInputStream(buffer)), offset);
+            offset += 4 + recordSize;
+        }
+        if(offset < size)
+        {
+            System.out.println("[STORE] Removed an incomplete record at the end of " + file);
+            channel.truncate(offset);
+        }
+        length = offset;
+    }
+
+    /**
+     * Appends a closed auction and its bid history to the archive
+     * @param auction the closed auction
+     * @param history the bid history of the auction, or null if no bid was accepted
+     * @throws IOException if the auction can not be written or the segment is full
+     */
+    public synchronized void put(Auction auction, BidHistory history) throws IOException
+    {
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream(4 + Bits.size(auction.getAuctionID()) + auction.size()
+                + 1 + (history == null ? 0 : history.size()));
+        out.writeInt(0);
+        Bits.writeString(auction.getAuctionID(), out);
+        auction.writeTo(out);
+        out.writeBoolean(history != null);
+        if(history != null)
+            history.writeTo(out);
+        if(length + out.position() > Integer.MAX_VALUE)
+            throw new IOException("[STORE] " + file + " is full");
+
+        ByteBuffer record = ByteBuffer.wrap(out.buffer(), 0, out.position());
+        record.putInt(0, out.position() - 4);
+        long offset = length;
+        while (record.hasRemaining())
+            channel.write(record, offset + record.position());
+        offsets.put(auction.getAuctionID(), offset);
+        length += out.position();
+        unforced = true;
+    }
+
+    /**
+     * Forces the appended records to the disk. The records are not forced by put, since the log holds the
+     * mutations that archived them, but they must be forced before a snapshot replaces those mutations.
+     * @throws IOException
+     */
+    public synchronized void force() throws IOException
+    {
+        if(!unforced)
+            return;
+        channel.force(false);
+        unforced = false;
+    }
+
+    /**
+     * Returns an archived auction
+     * @param auctionID ID of the auction
+     * @return the auction, or null if the auction is not in the archive
+     */
+    public synchronized Auction get(String auctionID)
+    {
+        Long offset = offsets.get(auctionID);
+        if(offset == null)
+            return null;
+        try {
+            return read(offset);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Returns the bid history of an archived auction
+     * @param auctionID ID of the auction
+     * @return the history, or null if the auction is not in the archive or no bid was accepted
+     */
+    public synchronized BidHistory getBidHistory(String auctionID)
+    {
+        Long offset = offsets.get(auctionID);
+        if(offset == null)
+            return null;
+        try {
+            ByteBuffer buffer = record(offset);
+            ByteBufferInputStream in = new ByteBufferInputStream(buffer);
+            Bits.readString(in);
+            new Auction().readFrom(in);
+            if(!buffer.hasRemaining() || !in.readBoolean())
+                return null;
+            BidHistory history = new BidHistory();
+            history.readFrom(in);
+            return history;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Decodes the auction of a record
+     * @param offset the offset of the record
+     * @return Auction
+     * @throws IOException
+     */
+    private Auction read(long offset) throws IOException
+    {
+        ByteBufferInputStream in = new ByteBufferInputStream(record(offset));
+        Bits.readString(in);
+        Auction auction = new Auction();
+        auction.readFrom(in);
+        return auction;
+    }
+
+    /**
+     * Returns the bytes of a record after its length, mapping the file again if the record was appended after the last mapping
+     * @param offset the offset of the record
+     * @return a buffer that ends at the end of the record
+     * @throws IOException
+     */
+    private ByteBuffer record(long offset) throws IOException
+    {
+        if(mapped == null || mapped.capacity() < length)
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        ByteBuffer buffer = mapped.duplicate();
+        buffer.limit((int) offset + 4 + mapped.getInt((int) offset));
+        buffer.position((int) offset + 4);
+        return buffer;
+    }
+
+    /**
+     * Returns the number of archived auctions
+     * @return int
+     */
+    public synchronized int size()
+    {
+        return offsets.size();
+    }
+
+    /**
+     * Returns the number of bytes of the records. The records before this length never change,
+     * so they can be copied without holding the lock of the archive.
+     * @return long
+     */
+    public synchronized long length()
+    {
+        return length;
+    }
+
+    /**
+     * Copies the records to a member that receives the state, as they are in the file
+     * @param out the stream to the member
+     * @param length the number of bytes to copy, returned by length
+     * @throws IOException
+     */
+    public void copyTo(DataOutput out, long length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        long position = 0;
+        while (position < length)
+        {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), length - position));
+            int read = channel.read(buffer, position);
+            if(read < 0)
+                throw new EOFException("[STORE] " + file + " is shorter than " + length + " bytes");
+            out.write(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    /**
+     * Replaces the records with the records copied by an other member
+     * @param in the stream from the member
+     * @param length the number of bytes of the records
+     * @throws IOException
+     */
+    public synchronized void replace(DataInput in, long length) throws IOException
+    {
+        mapped = null;
+        channel.truncate(0);
+        byte[] bytes = new byte[COPY_BUFFER_SIZE];
+        long position = 0;
+        while (position < length)
+        {
+            int read = (int) Math.min(bytes.length, length - position);
+            in.readFully(bytes, 0, read);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, read);
+            while (buffer.hasRemaining())
+                channel.write(buffer, position + buffer.position());
+            position += read;
+        }
+        //the snapshot of the state received with these records is written next.
+        channel.force(false);
+        unforced = false;
+        index();
+    }
+
+    /**
+     * Closes the file of the archive
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        mapped = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The store of the credentials of the registered clients, kept by every replica in a single file.
+ * Records are only appended to the file, a record written later for the same user name replaces the
+ * earlier one. The offset of the last record of every user name is kept in memory,
+ * so a lookup is one read of the file at a known position.
+ * @author Emmeleia Arakleitou
+ */
+public class CredentialStore implements Closeable {
+
+    private final File file;
+    private final RandomAccessFile data;
+    private final HashMap<String,Long> offsets = new HashMap<>();
+
+    /**
+     * Opens the store, creating the file if it does not exist, and builds the index from the records.
+     * A record that was not completely written when the replica stopped is removed.
+     * @param file the file of the store
+     * @throws IOException if the file can not be opened
+     */
+    public CredentialStore(File file) throws IOException
+    {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(parent != null && !parent.exists() && !parent.mkdirs())
+            throw new IOException("[STORE] Can not create the directory " + parent);
+        this.file = file;
+        this.data = new RandomAccessFile(file, "rw");
+        index();
+    }
+
+    /**
+     * Reads every record of the file and keeps the offset of the last record of every user name.
+     * @throws IOException
+     */
+    private void index() throws IOException
+    {
+        long offset = 0, length = data.length();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (offset < length)
+            {
+                int size;
+                String userName;
+                try {
+                    size = in.readInt();
+                    if(offset + 4 + size > length)
+                        break;
+                    userName = in.readUTF();
+                    in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                offsets.put(userName, offset);
+                offset += 4 + size;
+            }
+        } finally {
+            in.close();
+        }
+        if(offset < length)
+        {
+            System.out.println("[STORE] Removed an incomplete record at the end of " + file);
+            data.setLength(offset);
+        }
+    }
+
+    /**
+     * Returns the password of a user
+     * @param userName the name of the user
+     * @return the password, or null if the user is not in the store
+     */
+    public synchronized String getPassword(String userName)
+    {
+        Long offset = offsets.get(userName);
+        if(offset == null)
+            return null;
+        try {
+            data.seek(offset + 4);
+            data.readUTF();
+            return data.readUTF();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Appends the credentials of a user, which replace the earlier credentials of the same user name
+     * @param userName the name of the user
+     * @param password the password of the user
+     */
+    public synchronized void put(String userName, String password)
+    {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(bytes);
+            record.writeUTF(userName);
+            record.writeUTF(password);
+
+            long offset = data.length();
+            data.seek(offset);
+            data.writeInt(bytes.size());
+            data.write(bytes.toByteArray());
+            offsets.put(userName, offset);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Appends the credentials of the clients that are missing from the store or have an other password,
+     * used after the state of the replica is replaced.
+     * @param clients the registered clients
+     */
+    public synchronized void putAll(Map<String,Client> clients)
+    {
+        for(Client client : clients.values())
+        {
+            if(client == null || client.getName() == null || client.getUserPass() == null)
+                continue;
+            String userName = client.getName().toUpperCase();
+            if(!client.getUserPass().equals(getPassword(userName)))
+                put(userName, client.getUserPass());
+        }
+    }
+
+    /**
+     * Returns the number of users in the store
+     * @return int
+     */
+    public synchronized int size()
+    {
+        return offsets.size();
+    }
+
+    /**
+     * Closes the file of the store
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        data.close();
+    }
+}
@@ -0,0 +1,306 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.Naming;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.UnknownHostException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The remote object used by the clients when there are several front-end servers. Every call is sent to
+ * the front-end server with the fewest calls in progress from this process. A front-end server that can not be
+ * reached is not chosen again for RETRY_INTERVAL and the call is sent to the next one, which is safe because
+ * the call never reached the server. A call that fails after it was sent is not sent again, since it may have
+ * been executed. The subscription of a client stays on the front-end server it was made on and is made again
+ * on an other one when that server can not be reached.
+ * The front-end servers are set with the system property auction.frontends, a list of URLs separated by commas.
+ * @author Emmeleia Arakleitou
+ */
+public class FrontEndBalancer implements InvocationHandler {
+
+    public static final String FRONT_ENDS = System.getProperty("auction.frontends", "rmi://localhost/AuctioningServer");
+    private static final long RETRY_INTERVAL = 5000;
+    private static final ConcurrentHashMap<String,Server_Interface> balancers = new ConcurrentHashMap<>();
+    private final FrontEnd[] frontEnds;
+    private final AtomicInteger nextFrontEnd = new AtomicInteger();
+    private final ConcurrentHashMap<String,Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicBoolean resubscribing = new AtomicBoolean();
+
+    /**
+     * Constructor of the class
+     * @param serverURLs the URLs of the front-end servers separated by commas
+     */
+    private FrontEndBalancer(String serverURLs)
+    {
+        String[] urls = serverURLs.split(",");
+        this.frontEnds = new FrontEnd[urls.length];
+        for(int i = 0; i < urls.length; i++)
+            this.frontEnds[i] = new FrontEnd(i, urls[i].trim());
+    }
+
+    /**
+     * Returns the remote object that balances the calls over a list of front-end servers.
+     * The clients of a process that use the same list share the remote object, so the calls in progress
+     * of all of them are counted.
+     * @param serverURLs the URLs of the front-end servers separated by commas
+     * @return the remote object, or null if no front-end server is bound in the registry
+     */
+    public static Server_Interface connect(String serverURLs)
+    {
+        Server_Interface remoteService = balancers.computeIfAbsent(serverURLs, urls ->
+                (Server_Interface) Proxy.newProxyInstance(Server_Interface.class.getClassLoader(),
+                        new Class[]{Server_Interface.class}, new FrontEndBalancer(urls)));
+        FrontEndBalancer balancer = (FrontEndBalancer) Proxy.getInvocationHandler(remoteService);
+        for(FrontEnd frontEnd : balancer.frontEnds)
+        {
+            try {
+                frontEnd.lookup();
+                return remoteService;
+            } catch (Exception e) {
+                frontEnd.failed();
+            }
+        }
+        System.out.println("The name you try to lookup has no bind in the registry");
+        return null;
+    }
+
+    /**
+     * Sends a call of the remote object to a front-end server
+     * @param proxy the remote object
+     * @param method the method called
+     * @param args the arguments of the call
+     * @return the response of the front-end server
+     * @throws Throwable the exception of the call
+     */
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+        if(method.getDeclaringClass() == Object.class)
+        {
+            switch (method.getName())
+            {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "FrontEndBalancer" + Arrays.toString(frontEnds);
+            }
+        }
+        try {
+            switch (method.getName())
+            {
+                case "subscribe":
+                    Subscription subscription = new Subscription((String) args[0], (AuctionListener) args[1]);
+                    call(method, args, null, subscription);
+                    this.subscriptions.put(subscription.clientID, subscription);
+                    return null;
+                case "unsubscribe":
+                    Subscription removed = this.subscriptions.remove((String) args[0]);
+                    return call(method, args, removed == null ? null : removed.frontEnd, null);
+                default:
+                    return call(method, args, null, null);
+            }
+        } finally {
+            resubscribe();
+        }
+    }
+
+    /**
+     * Sends a call to the front-end server with the fewest calls in progress, and to the next one
+     * while the chosen front-end server can not be reached
+     * @param method the method called
+     * @param args the arguments of the call
+     * @param preferred the front-end server to try first, or null
+     * @param subscription the subscription made by the call, which is kept on the front-end server that executed it, or null
+     * @return the response of the front-end server
+     * @throws Throwable the exception of the call
+     */
+    private Object call(Method method, Object[] args, FrontEnd preferred, Subscription subscription) throws Throwable
+    {
+        boolean[] tried = new boolean[frontEnds.length];
+        RemoteException failure = null;
+        FrontEnd frontEnd = preferred != null && preferred.isAvailable() ? preferred : choose(tried);
+        while (frontEnd != null)
+        {
+            tried[frontEnd.index] = true;
+            frontEnd.outstanding.incrementAndGet();
+            try {
+                Object result = method.invoke(frontEnd.lookup(), args);
+                if(subscription != null)
+                    subscription.frontEnd = frontEnd;
+                return result;
+            } catch (InvocationTargetException e) {
+                if(!unreachable(e.getCause()))
+                    throw e.getCause();
+                failure = (RemoteException) e.getCause();
+            } catch (Exception e) {
+                //the name is not bound or the registry can not be reached.
+                failure = new ConnectException("Can not look up " + frontEnd.url, e);
+            } finally {
+                frontEnd.outstanding.decrementAndGet();
+            }
+            failed(frontEnd);
+            frontEnd = choose(tried);
+        }
+        throw failure != null ? failure : new ConnectException("There is no front-end server");
+    }
+
+    /**
+     * Chooses the front-end server with the fewest calls in progress, out of the ones not tried yet.
+     * The front-end servers that failed recently are only chosen when no other is left.
+     * @param tried the front-end servers already tried by the call
+     * @return the front-end server, or null if all of them were tried
+     */
+    private FrontEnd choose(boolean[] tried)
+    {
+        //starts from a different front-end server every time, so the ties are spread evenly.
+        int start = Math.floorMod(nextFrontEnd.getAndIncrement(), frontEnds.length);
+        FrontEnd chosen = null;
+        for(int i = 0; i < frontEnds.length; i++)
+        {
+            int index = (start + i) % frontEnds.length;
+            if(tried[index])
+                continue;
+            FrontEnd candidate = frontEnds[index];
+            if(chosen == null
+                    || (candidate.isAvailable() && !chosen.isAvailable())
+                    || (candidate.isAvailable() == chosen.isAvailable() && candidate.outstanding.get() < chosen.outstanding.get()))
+                chosen = candidate;
+        }
+        return chosen;
+    }
+
+    /**
+     * Checks if a call failed before it reached the front-end server, so it can be sent to an other one
+     * @param cause the exception of the call
+     * @return true if the front-end server can not be reached
+     */
+    private static boolean unreachable(Throwable cause)
+    {
+        return cause instanceof ConnectException || cause instanceof ConnectIOException
+                || cause instanceof NoSuchObjectException || cause instanceof UnknownHostException;
+    }
+
+    /**
+     * Marks a front-end server that can not be reached and moves its subscriptions to an other one
+     * @param frontEnd the front-end server
+     */
+    private void failed(FrontEnd frontEnd)
+    {
+        System.out.println("The server " + frontEnd.url + " can not be reached, the calls are sent to an other server");
+        frontEnd.failed();
+        for(Subscription subscription : subscriptions.values())
+            if(subscription.frontEnd == frontEnd)
+                subscription.frontEnd = null;
+    }
+
+    /**
+     * Makes the subscriptions of the front-end servers that failed again on an other front-end server
+     */
+    private void resubscribe()
+    {
+        if(!resubscribing.compareAndSet(false, true))
+            return;
+        try {
+            Method subscribe = Server_Interface.class.getMethod("subscribe", String.class, AuctionListener.class);
+            for(Subscription subscription : subscriptions.values())
+            {
+                if(subscription.frontEnd != null)
+                    continue;
+                try {
+                    call(subscribe, new Object[]{subscription.clientID, subscription.listener}, null, subscription);
+                } catch (Throwable e) {
+                    //tried again after the next call.
+                }
+            }
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            resubscribing.set(false);
+        }
+    }
+
+    /**
+     * A front-end server and the number of calls in progress on it
+     */
+    private static class FrontEnd {
+        final int index;
+        final String url;
+        final AtomicInteger outstanding = new AtomicInteger();
+        private volatile Server_Interface remoteService;
+        private volatile long failedAt;
+
+        FrontEnd(int index, String url)
+        {
+            this.index = index;
+            this.url = url;
+        }
+
+        /**
+         * Returns the remote object of the front-end server, looked up in the registry the first time
+         * @return Server_Interface
+         * @throws Exception if the name is not bound or the registry can not be reached
+         */
+        Server_Interface lookup() throws Exception
+        {
+            Server_Interface service = this.remoteService;
+            if(service == null)
+            {
+                service = (Server_Interface) Naming.lookup(url);
+                this.remoteService = service;
+            }
+            return service;
+        }
+
+        /**
+         * Forgets the remote object, a front-end server that is started again binds a new one
+         */
+        void failed()
+        {
+            this.remoteService = null;
+            this.failedAt = System.currentTimeMillis();
+        }
+
+        /**
+         * Checks if the front-end server did not fail in the last RETRY_INTERVAL
+         * @return boolean
+         */
+        boolean isAvailable()
+        {
+            return System.currentTimeMillis() - failedAt >= RETRY_INTERVAL;
+        }
+
+        /**
+         * Returns the URL of the front-end server and the number of calls in progress
+         * @return String
+         */
+        @Override
+        public String toString()
+        {
+            return url + "(" + outstanding.get() + ")";
+        }
+    }
+
+    /**
+     * The subscription of a client and the front-end server it is made on, null while it has to be made again
+     */
+    private static class Subscription {
+        final String clientID;
+        final AuctionListener listener;
+        volatile FrontEnd frontEnd;
+
+        Subscription(String clientID, AuctionListener listener)
+        {
+            this.clientID = clientID;
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+import java.security.Key;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of the secret keys used to authenticate the clients, so a login does not
+ * load and derive the key of the user again. When the cache is full the least recently used key is evicted.
+ * The size of the cache is set with the system property auction.keycache.size, the default is 10000.
+ * @author Emmeleia Arakleitou
+ */
+public class KeyCache {
+
+    private static final int DEFAULT_CAPACITY = 10000;
+    private final LinkedHashMap<String,Key> keys;
+    private long hits, misses, evictions, invalidations;
+    private long generation;
+
+    /**
+     * Constructor of the class
+     * @param capacity the maximum number of keys in the cache
+     */
+    public KeyCache(final int capacity)
+    {
+        this.keys = new LinkedHashMap<String,Key>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Key> eldest) {
+                if(size() <= capacity)
+                    return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Creates a cache of the size configured for this JVM
+     * @return KeyCache
+     */
+    public static KeyCache configured()
+    {
+        return new KeyCache(Integer.getInteger("auction.keycache.size", DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Returns the key of a user, loading it on a miss. The key is loaded without holding the lock
+     * and is not cached if the user was invalidated while it was loaded.
+     * @param userName the name of the user
+     * @param loader loads the key of a user, returns null if the user has no key
+     * @return the key, or null if the user has no key
+     */
+    public Key get(String userName, Function<String,Key> loader)
+    {
+        long loadGeneration;
+        synchronized (this)
+        {
+            Key key = keys.get(userName);
+            if(key != null)
+            {
+                hits++;
+                return key;
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+        Key key = loader.apply(userName);
+        synchronized (this)
+        {
+            if(key != null && loadGeneration == generation)
+                keys.put(userName, key);
+        }
+        return key;
+    }
+
+    /**
+     * Removes the key of a user, for example when the user registers again with a new password
+     * @param userName the name of the user
+     */
+    public synchronized void invalidate(String userName)
+    {
+        generation++;
+        if(keys.remove(userName) != null)
+            invalidations++;
+    }
+
+    /**
+     * Removes all the keys, for example when the state of the replica is replaced
+     */
+    public synchronized void clear()
+    {
+        generation++;
+        invalidations += keys.size();
+        keys.clear();
+    }
+
+    /**
+     * Accessor for the number of keys found in the cache
+     * @return long
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Accessor for the number of keys that were loaded
+     * @return long
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Accessor for the number of keys evicted because the cache was full
+     * @return long
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Accessor for the number of keys removed by invalidate and clear
+     * @return long
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Returns the metrics of the cache
+     * @return String
+     */
+    @Override
+    public synchronized String toString()
+    {
+        long lookups = hits + misses;
+        return "[KEYS] size=" + keys.size() + " hits=" + hits + " misses=" + misses
+                + " hitRatio=" + (lookups == 0 ? 0 : hits * 100 / lookups) + "%"
+                + " evictions=" + evictions + " invalidations=" + invalidations;
+    }
+}
@@ -0,0 +1,40 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Helpers for the fixed-point representation of the amounts of money. Inside the replicas and on the wire
+ * an amount is a long number of minor units (cents), so comparing two bids does not allocate.
+ * BigDecimal is only used by the methods of Server_Interface and by the accessors used by the clients.
+ * @author Emmeleia Arakleitou
+ */
+public class Money {
+
+    /**
+     * The number of decimal places of the minor unit
+     */
+    public static final int SCALE = 2;
+
+    /**
+     * Converts an amount to minor units. Amounts with more decimal places are not rounded,
+     * so a bid is never stored as more or less than the bidder offered.
+     * @param amount the amount, null is zero
+     * @return the amount in minor units
+     * @throws ArithmeticException if the amount has more than SCALE decimal places or does not fit in a long
+     */
+    public static long toMinor(BigDecimal amount)
+    {
+        if(amount == null)
+            return 0;
+        return amount.setScale(SCALE, RoundingMode.UNNECESSARY).movePointRight(SCALE).longValueExact();
+    }
+
+    /**
+     * Converts an amount in minor units to a BigDecimal
+     * @param minor the amount in minor units
+     * @return BigDecimal with SCALE decimal places
+     */
+    public static BigDecimal toDecimal(long minor)
+    {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+}
@@ -0,0 +1,80 @@
+import org.jgroups.util.ByteArrayDataOutputStream;
+import org.jgroups.util.ByteArrayDataInputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+
+/**
+ * Measures the memory allocated and the time taken by the bid path, without the network:
+ * the front-end creates and encodes the bid, the primary decodes it, compares it to the highest bid,
+ * applies the accepted bid to the state and encodes the mutation that is multicast to the backups.
+ * Usage: MoneyBenchmark [bids]
+ * @author Emmeleia Arakleitou
+ */
+public class MoneyBenchmark {
+
+    private static final int AUCTIONS = 100;
+
+    public static void main(String[] args) throws Exception
+    {
+        int bids = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        //the prices are received by the front-end from RMI, so they are not counted.
+        BigDecimal[] prices = new BigDecimal[bids];
+        for(int i = 0; i < bids; i++)
+            prices[i] = BigDecimal.valueOf(10000 + i, 2);
+
+        run(prices);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        run(prices);
+        long time = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+
+        System.out.format("%-12s%18s%14s%n", "Bids", "Allocated (B/bid)", "Time (ns/bid)");
+        System.out.format("%-12d%18d%14d%n", bids, allocated / bids, time / bids);
+    }
+
+    /**
+     * Places every bid on a new state, round robin over the auctions
+     * @param prices the prices of the bids, in increasing order
+     * @throws Exception
+     */
+    private static void run(BigDecimal[] prices) throws Exception
+    {
+        State state = new State();
+        String[] auctionIDs = new String[AUCTIONS];
+        for(int i = 0; i < AUCTIONS; i++)
+        {
+            auctionIDs[i] = Integer.toString(i + 1);
+            Auction auction = new Auction("Item " + i, BigDecimal.ONE, BigDecimal.TEN, BigDecimal.ZERO, " ", "0", "Active");
+            auction.setAuctionID(auctionIDs[i]);
+            state.getActiveAuctions().put(auctionIDs[i], auction);
+        }
+
+        ByteArrayDataOutputStream request = new ByteArrayDataOutputStream(64);
+        ByteArrayDataOutputStream replication = new ByteArrayDataOutputStream(64);
+        long sequence = 0, accepted = 0;
+        for(int i = 0; i < prices.length; i++)
+        {
+            request.position(0);
+            new Bid(prices[i], auctionIDs[i % AUCTIONS], "7").writeTo(request);
+
+            Bid bid = new Bid();
+            bid.readFrom(new ByteArrayDataInputStream(request.buffer(), 0, request.position()));
+            Auction auction = state.getActiveAuctions().get(bid.getAuctionID());
+            if(bid.getPriceMinor() > auction.getHighestBidMinor())
+            {
+                Mutation mutation = Mutation.bidAccepted(bid.getAuctionID(), bid.getPriceMinor(), bid.getBidderID(), i);
+                mutation.setSequence(++sequence);
+                state.apply(mutation);
+                replication.position(0);
+                mutation.writeTo(replication);
+                accepted++;
+            }
+        }
+        if(accepted != prices.length)
+            throw new IllegalStateException("Only " + accepted + " bids were accepted");
+    }
+}
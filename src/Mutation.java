@@ -0,0 +1,377 @@
+import org.jgroups.util.SizeStreamable;
+import org.jgroups.util.Bits;
+import java.util.ArrayList;
+import java.util.List;
+import java.io.*;
+
+/**
+ * A single change to the replicated state of the auctioning system.
+ * The primary replica applies the change to its own state and multicasts it
+ * to the other cluster members, which apply the mutations in the order given by the sequence number.
+ * Every mutation carries the epoch of the primary that wrote it, so the mutations of a primary that was replaced
+ * are told apart from the ones of the new primary that reuse their sequence numbers.
+ * @author Emmeleia Arakleitou
+ */
+public class Mutation implements SizeStreamable {
+
+    /**
+     * The kinds of changes that can be made to the state.
+     */
+    public enum Type {AUCTION_CREATED, AUCTION_CLOSED, CLIENT_REGISTERED, BID_ACCEPTED, AUCTION_ARCHIVED, PARTICIPANT_ADDED}
+
+    private Type type;
+    private long sequence, epoch;
+    private String key, bidderID;
+    private Auction auction;
+    private BidHistory history;
+    private Client client;
+    private long price, time;
+
+    /**
+     * Constructor with no parameters used to decode a mutation from its binary form.
+     */
+    public Mutation()
+    {
+    }
+
+    /**
+     * Constructor of the class. Use one of the factory methods instead.
+     * @param type the kind of the change
+     * @param key the ID of the auction or the client that is changed
+     */
+    private Mutation(Type type, String key)
+    {
+        this.type = type;
+        this.key = key;
+    }
+
+    /**
+     * Creates the mutation that adds a new auction to the active auctions
+     * @param auction the new auction
+     * @return Mutation
+     */
+    public static Mutation auctionCreated(Auction auction)
+    {
+        Mutation mutation = new Mutation(Type.AUCTION_CREATED, auction.getAuctionID());
+        mutation.auction = auction;
+        return mutation;
+    }
+
+    /**
+     * Creates the mutation that moves an active auction to the closed auctions
+     * @param auctionID ID of the auction
+     * @param time the time the auction was closed by the primary, in milliseconds since the epoch
+     * @return Mutation
+     */
+    public static Mutation auctionClosed(String auctionID, long time)
+    {
+        Mutation mutation = new Mutation(Type.AUCTION_CLOSED, auctionID);
+        mutation.time = time;
+        return mutation;
+    }
+
+    /**
+     * Creates the mutation that moves a closed auction and its bid history from the state to the archive on disk
+     * @param auction the closed auction, written to the archive of every replica
+     * @param history the bid history of the auction, or null if no bid was accepted
+     * @return Mutation
+     */
+    public static Mutation auctionArchived(Auction auction, BidHistory history)
+    {
+        Mutation mutation = new Mutation(Type.AUCTION_ARCHIVED, auction.getAuctionID());
+        mutation.auction = auction;
+        mutation.history = history;
+        return mutation;
+    }
+
+    /**
+     * Creates the mutation that registers a new client
+     * @param clientID ID of the client
+     * @param client the client to register
+     * @return Mutation
+     */
+    public static Mutation clientRegistered(String clientID, Client client)
+    {
+        Mutation mutation = new Mutation(Type.CLIENT_REGISTERED, clientID);
+        mutation.client = client;
+        return mutation;
+    }
+
+    /**
+     * Creates the mutation that makes a bid the highest bid of an auction
+     * @param auctionID ID of the auction
+     * @param price the accepted bid in minor units
+     * @param bidderID ID of the bidder
+     * @param time the time the bid was accepted by the primary, in milliseconds since the epoch
+     * @return Mutation
+     */
+    public static Mutation bidAccepted(String auctionID, long price, String bidderID, long time)
+    {
+        Mutation mutation = new Mutation(Type.BID_ACCEPTED, auctionID);
+        mutation.price = price;
+        mutation.bidderID = bidderID;
+        mutation.time = time;
+        return mutation;
+    }
+
+    /**
+     * Creates the mutation that records a bidder whose bid was rejected as a participant of an auction,
+     * so every front-end server notifies the bidder when the auction is closed
+     * @param auctionID ID of the auction
+     * @param bidderID ID of the bidder
+     * @return Mutation
+     */
+    public static Mutation participantAdded(String auctionID, String bidderID)
+    {
+        Mutation mutation = new Mutation(Type.PARTICIPANT_ADDED, auctionID);
+        mutation.bidderID = bidderID;
+        return mutation;
+    }
+
+    /**
+     * Accessor for the type of the change
+     * @return Type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Accessor for the sequence number
+     * @return the position of the mutation in the stream of changes
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Mutator for the sequence number, set by the primary before the mutation is sent.
+     * @param sequence the position of the mutation in the stream of changes
+     */
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Accessor for the epoch
+     * @return the epoch of the primary that wrote the mutation, 0 if it was written before the primaries had one
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Mutator for the epoch, set by the primary with its sequence number.
+     * @param epoch the epoch of the primary
+     */
+    public void setEpoch(long epoch) {
+        this.epoch = epoch;
+    }
+
+    /**
+     * Accessor for the ID of the auction or client that is changed
+     * @return String
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Accessor for the created or archived auction
+     * @return Auction
+     */
+    public Auction getAuction() {
+        return auction;
+    }
+
+    /**
+     * Accessor for the bid history of the archived auction
+     * @return BidHistory, or null if no bid was accepted
+     */
+    public BidHistory getBidHistory() {
+        return history;
+    }
+
+    /**
+     * Accessor for the registered client
+     * @return Client
+     */
+    public Client getClient() {
+        return client;
+    }
+
+    /**
+     * Accessor for the accepted bid
+     * @return the bid in minor units
+     */
+    public long getPrice() {
+        return price;
+    }
+
+    /**
+     * Accessor for the ID of the bidder of the accepted bid or of the participant
+     * @return String
+     */
+    public String getBidderID() {
+        return bidderID;
+    }
+
+    /**
+     * Accessor for the time the bid was accepted or the auction was closed
+     * @return the time in milliseconds since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Writes the mutation in the binary format. Only the fields used by its type are written.
+     * @param out the output to write to
+     * @throws IOException
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException
+    {
+        WireFormat.writeVersion(out);
+        out.writeByte(type.ordinal());
+        Bits.writeLong(sequence, out);
+        Bits.writeLong(epoch, out);
+        Bits.writeString(key, out);
+        switch (type)
+        {
+            case AUCTION_CREATED:
+                auction.writeTo(out);
+                break;
+            case AUCTION_ARCHIVED:
+                auction.writeTo(out);
+                out.writeBoolean(history != null);
+                if(history != null)
+                    history.writeTo(out);
+                break;
+            case AUCTION_CLOSED:
+                Bits.writeLong(time, out);
+                break;
+            case CLIENT_REGISTERED:
+                Client.write(client, out);
+                break;
+            case BID_ACCEPTED:
+                Bits.writeLong(price, out);
+                Bits.writeString(bidderID, out);
+                Bits.writeLong(time, out);
+                break;
+            case PARTICIPANT_ADDED:
+                Bits.writeString(bidderID, out);
+                break;
+        }
+    }
+
+    /**
+     * Reads the mutation from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    @Override
+    public void readFrom(DataInput in) throws IOException
+    {
+        byte version = WireFormat.readVersion(in);
+        type = Type.values()[in.readByte()];
+        sequence = Bits.readLong(in);
+        epoch = version >= 8 ? Bits.readLong(in) : 0;
+        key = Bits.readString(in);
+        switch (type)
+        {
+            case AUCTION_CREATED:
+                auction = new Auction();
+                auction.readFrom(in);
+                break;
+            case AUCTION_ARCHIVED:
+                auction = new Auction();
+                auction.readFrom(in);
+                //before version 7 the history stayed in the state.
+                if(version >= 7 && in.readBoolean())
+                {
+                    history = new BidHistory();
+                    history.readFrom(in);
+                }
+                break;
+            case AUCTION_CLOSED:
+                time = Bits.readLong(in);
+                break;
+            case CLIENT_REGISTERED:
+                client = Client.read(in);
+                break;
+            case BID_ACCEPTED:
+                price = Bits.readLong(in);
+                bidderID = Bits.readString(in);
+                time = Bits.readLong(in);
+                break;
+            case PARTICIPANT_ADDED:
+                bidderID = Bits.readString(in);
+                break;
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the binary format
+     * @return int
+     */
+    @Override
+    public int size()
+    {
+        int size = 1 + 1 + Bits.size(sequence) + Bits.size(epoch) + Bits.size(key);
+        switch (type)
+        {
+            case AUCTION_CREATED:
+                size += auction.size();
+                break;
+            case AUCTION_ARCHIVED:
+                size += auction.size() + 1 + (history == null ? 0 : history.size());
+                break;
+            case AUCTION_CLOSED:
+                size += Bits.size(time);
+                break;
+            case CLIENT_REGISTERED:
+                size += 1 + (client == null ? 0 : client.size());
+                break;
+            case BID_ACCEPTED:
+                size += Bits.size(price) + Bits.size(bidderID) + Bits.size(time);
+                break;
+            case PARTICIPANT_ADDED:
+                size += Bits.size(bidderID);
+                break;
+        }
+        return size;
+    }
+
+    /**
+     * Writes a batch of mutations as the number of mutations followed by the mutations
+     * @param mutations the mutations to write
+     * @param out the output to write to
+     * @throws IOException
+     */
+    public static void writeBatch(List<Mutation> mutations, DataOutput out) throws IOException
+    {
+        out.writeInt(mutations.size());
+        for(Mutation mutation : mutations)
+            mutation.writeTo(out);
+    }
+
+    /**
+     * Reads a batch of mutations written by writeBatch
+     * @param in the input to read from
+     * @return the mutations in the order they were written
+     * @throws IOException
+     */
+    public static List<Mutation> readBatch(DataInput in) throws IOException
+    {
+        int size = in.readInt();
+        List<Mutation> mutations = new ArrayList<>(size);
+        for(int i = 0; i < size; i++)
+        {
+            Mutation mutation = new Mutation();
+            mutation.readFrom(in);
+            mutations.add(mutation);
+        }
+        return mutations;
+    }
+}
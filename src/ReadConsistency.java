@@ -0,0 +1,39 @@
+/**
+ * The consistency levels for the reads of the front-end server. Set with the system property
+ * auction.read.consistency, the default is ONE.
+ * @author Emmeleia Arakleitou
+ */
+public enum ReadConsistency {
+
+    /**
+     * The read is served by the primary, so it sees every write that has been acknowledged.
+     */
+    PRIMARY,
+
+    /**
+     * The read is served by one replica chosen round-robin. A backup may not yet have applied
+     * the last mutations of the primary. The listings of auctions are served from the catalogue cache
+     * of the front-end server, which follows the mutations like a backup.
+     */
+    ONE,
+
+    /**
+     * The read is sent to every replica and the first response is used.
+     * The listings of auctions are served from the catalogue cache of the front-end server.
+     */
+    FIRST,
+
+    /**
+     * The read is sent to every replica and all the responses are collected.
+     */
+    ALL;
+
+    /**
+     * Returns the consistency level configured for this JVM
+     * @return ReadConsistency
+     */
+    public static ReadConsistency configured()
+    {
+        return valueOf(System.getProperty("auction.read.consistency", ONE.name()).toUpperCase());
+    }
+}
@@ -1,6 +1,7 @@
 import java.rmi.RemoteException;
 import java.math.BigDecimal;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class is a subclass of Client and implements the functionality
@@ -9,12 +10,11 @@ import java.util.Scanner;
  */
 public class Seller extends Client
 {
-    private final String serverURL ="rmi://localhost/AuctioningServer";
     private BigDecimal startingPrice,reservedPrice;
-    private Server_Interface remoteService;
-    private String choice;
-    private char choice2;
-    private Scanner in;
+    private transient Server_Interface remoteService;
+    private transient String choice;
+    private transient char choice2;
+    private transient Scanner in;
 
     /**
      * Constructor of the class that calls the constructor of the superclass Client
@@ -25,9 +25,15 @@ public class Seller extends Client
     public Seller(String sellerName,String selleEmail,String userPass) {
 
         super(sellerName, selleEmail,userPass);
-        this.remoteService = this.connectToRMI(serverURL);
+        this.remoteService = this.connectToRMI(FrontEndBalancer.FRONT_ENDS);
         createClientID();
-        this.writeKeys(this);
+    }
+
+    /**
+     * Constructor used to decode a seller from its binary form, does not connect to the server.
+     */
+    Seller() {
+        super(null,null,null);
     }
 
     /**
@@ -83,25 +89,30 @@ public class Seller extends Client
 
             //Get user input for reserved, starting value and description of the item.
             this.getValues();
+            long minutes = getDuration();
 
             //create a new action using the remote object
-            auctionID = remoteService.createNewAuction(itemDesc,startingPrice,reservedPrice,this.getUserID());
-            System.out.println('\n' + "An Auction has been created successfully with ID : " + auctionID +  '\n');
+            auctionID = getRemoteService().createNewAuction(itemDesc,startingPrice,reservedPrice,this.getUserID(),TimeUnit.MINUTES.toMillis(minutes));
+            if(auctionID == null)
+                System.out.println('\n' + "The auction could not be created. Please try again." + '\n');
+            else
+                System.out.println('\n' + "An Auction has been created successfully with ID : " + auctionID +  '\n');
         }
         else if(choice == 'B')
             //prints the list with the active options
-            displayActiveAuctions(remoteService.getActiveAuctions());
+            browseActiveAuctions(getRemoteService(),null,in);
 
         else if(choice == 'C')
         {
             //Checks if there are no active auctions.
-            isEmpty = displayActiveAuctions(remoteService.getActiveAuctions());
+            //only the auctions of the seller can be closed.
+            isEmpty = browseActiveAuctions(getRemoteService(),this.getUserID(),in);
             if(!isEmpty)
             {
                 //Checks if the ID provided belongs to an active action
                 System.out.println("Enter the ID of the auction you want to close");
                 auctionID = in.next();
-                isClosed = remoteService.closeAuction(auctionID, this.getUserID());
+                isClosed = getRemoteService().closeAuction(auctionID, this.getUserID());
 
                 if(isClosed == -1 )
                     System.out.println("The auction ID provided does not belong to any of the current active auctions");
@@ -110,7 +121,7 @@ public class Seller extends Client
 
                 else{
                     //If id is valid looks for the winner and prints the appropriate message
-                    Client winner = remoteService.announceWinner(auctionID);
+                    Client winner = getRemoteService().announceWinner(auctionID);
                     if (winner == null)
                         System.out.println("There was no winner because the reserved price was not met");
                     else
@@ -181,11 +192,41 @@ public class Seller extends Client
     }
 
     /**
-     * Accessor for the remote object
+     * Asks for the number of minutes until the auction is closed automatically
+     * and asks again until the input is valid.
+     * @return the number of minutes, 0 if the seller closes the auction, at most Auction.MAX_DURATION in minutes
+     */
+    private long getDuration()
+    {
+        long maxMinutes = TimeUnit.MILLISECONDS.toMinutes(Auction.MAX_DURATION);
+        System.out.print("Duration in minutes (0 to close the auction yourself): ");
+        while (true)
+        {
+            if(in.hasNextLong())
+            {
+                long minutes = in.nextLong();
+                if(minutes >= 0 && minutes <= maxMinutes)
+                    return minutes;
+                System.out.println("The duration must be between 0 and " + maxMinutes + " minutes. Please try again");
+            }
+            else
+            {
+                System.out.println("The duration must be a whole number of minutes. Please give a new input." + '\n');
+                in.next();
+            }
+            System.out.print("Duration in minutes: ");
+        }
+    }
+
+    /**
+     * Accessor for the remote object. A seller received from the server
+     * connects to the server the first time the remote object is used.
      * @return remoteService
      */
     public Server_Interface getRemoteService()
     {
+        if(remoteService == null)
+            remoteService = this.connectToRMI(FrontEndBalancer.FRONT_ENDS);
         return remoteService;
     }
 
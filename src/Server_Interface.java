@@ -1,5 +1,6 @@
 import java.math.BigDecimal;
 import java.security.Key;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.rmi.*;
 /**
@@ -15,11 +16,24 @@ public interface Server_Interface extends Remote{
      * @param itemDesc A small description of the item to sold
      * @param startingPrice The starting price of the item
      * @param reservedPrice The minimum accepted price for an item
-     * @return auctionID that will be used to bid for that specific item
+     * @return auctionID that will be used to bid for that specific item, or null if the prices have more than
+     * Money.SCALE decimal places
      * @throws RemoteException ex
      */
     String createNewAuction(String itemDesc, BigDecimal startingPrice, BigDecimal reservedPrice, String sellerID) throws RemoteException;
 
+    /**
+     * This method creates an new Auction that is closed automatically at the end of a duration.
+     * @param itemDesc A small description of the item to sold
+     * @param startingPrice The starting price of the item
+     * @param reservedPrice The minimum accepted price for an item
+     * @param duration the time in milliseconds until the auction is closed, 0 if only the seller closes it
+     * @return auctionID that will be used to bid for that specific item, or null if the prices have more than
+     * Money.SCALE decimal places or the duration is negative or longer than Auction.MAX_DURATION
+     * @throws RemoteException ex
+     */
+    String createNewAuction(String itemDesc, BigDecimal startingPrice, BigDecimal reservedPrice, String sellerID, long duration) throws RemoteException;
+
      /**
      * This method closes an auction
      * @param auctionID The ID of the auction to be closed
@@ -37,26 +51,70 @@ public interface Server_Interface extends Remote{
      */
     boolean validateClientID(String clientID, Client client) throws RemoteException;
 
+    /**
+     * Registers a new client and gives it a unique ID
+     * @param client Instance of the object client
+     * @return the ID of the client
+     * @throws RemoteException ex
+     */
+    String registerClient(Client client) throws RemoteException;
+
     /**
      * Checks if the ID is associated with an entry in the HashMap
      * @param auctionID ID of the auction
      * @param activeAuctions HashMap with all the active auctions
      * @return true if auction entry exists otherwise returns false
      * @throws RemoteException ex
+     * @deprecated the map is not used, use auctionExists
      */
+    @Deprecated
     boolean validateAuctionID(String auctionID,HashMap<String,Auction> activeAuctions) throws RemoteException;
 
+    /**
+     * Checks if the ID belongs to an active auction
+     * @param auctionID ID of the auction
+     * @return true if the auction is active otherwise returns false
+     * @throws RemoteException ex
+     */
+    boolean auctionExists(String auctionID) throws RemoteException;
+
+    /**
+     * Returns an active auction
+     * @param auctionID ID of the auction
+     * @return the auction, or null if there is no active auction with that ID
+     * @throws RemoteException ex
+     */
+    Auction getActiveAuction(String auctionID) throws RemoteException;
+
+    /**
+     * Returns the accepted bids of an active or closed auction, in the order they were accepted
+     * @param auctionID ID of the auction
+     * @return the bid history, or null if no bid was accepted for that auction
+     * @throws RemoteException ex
+     */
+    BidHistory getBidHistory(String auctionID) throws RemoteException;
+
     /**
      * Takes a input a price and checks if the bid is greater than the currentHighest bid
      * and change the auction values.
      * @param price User Bid
      * @param auctionID ID of the auction
      * @param bidderID ID of bidder
-     * @return a message to indicate whether the bid is accepted
+     * @return a message to indicate whether the bid is accepted, a bid with more than Money.SCALE
+     * decimal places is rejected
      * @throws RemoteException ex
      */
     String bidFromItem(BigDecimal price,String auctionID,String bidderID) throws RemoteException;
 
+    /**
+     * Makes many bids with one call. The bids are applied in the order of the list,
+     * as if bidFromItem was called for every bid.
+     * @param bids the bids, each with the auction ID, the price and the bidder ID
+     * @return a message for every bid, in the order of the list, to indicate whether the bid is accepted
+     * @throws RemoteException ex
+     */
+    ArrayList<String> bidFromItems(ArrayList<Bid> bids) throws RemoteException;
+
     /**
      * Check if the highest bid is larger than the reserved price
      * @param auctionID ID of the auction
@@ -65,6 +123,23 @@ public interface Server_Interface extends Remote{
      */
     Client announceWinner(String auctionID) throws RemoteException;
 
+    /**
+     * Subscribes a client to the changes of the auctions it sells or bid for. The server calls the listener
+     * when one of these auctions is closed, so the client does not have to ask for the closed auctions,
+     * and when the client is outbid or the price changes, at most once per auction per interval.
+     * @param clientID ID of the client
+     * @param listener the callback exported by the client
+     * @throws RemoteException ex
+     */
+    void subscribe(String clientID, AuctionListener listener) throws RemoteException;
+
+    /**
+     * Stops the notifications of a client
+     * @param clientID ID of the client
+     * @throws RemoteException ex
+     */
+    void unsubscribe(String clientID) throws RemoteException;
+
     /**
      * Accessor for activeAuctions
      * @return a list of all the current active auctions
@@ -72,13 +147,32 @@ public interface Server_Interface extends Remote{
      */
     HashMap<String, Auction> getActiveAuctions() throws RemoteException;
 
+    /**
+     * Returns a page of the active auctions instead of the whole catalogue
+     * @param pageSize the maximum number of auctions of the page, at most AuctionPage.MAX_PAGE_SIZE
+     * @param cursor the cursor returned with the previous page or null for the first page
+     * @param sellerID only the auctions of this seller are listed, or all of them if null
+     * @param order the order of the auctions
+     * @return the page and the cursor of the next page
+     * @throws RemoteException ex
+     */
+    AuctionPage getActiveAuctionsPage(int pageSize, String cursor, String sellerID, AuctionOrder order) throws RemoteException;
+
     /**
      * Accessor for closedAuctions
-     * @return list of all the closed auctions
+     * @return list of the auctions closed recently, the older ones are only returned by getClosedAuction
      * @throws RemoteException ex
      */
     HashMap<String, Auction> getClosedAuctions() throws RemoteException;
 
+    /**
+     * Returns a closed auction, also if it was closed long ago
+     * @param auctionID ID of the auction
+     * @return the auction, or null if it is not closed
+     * @throws RemoteException ex
+     */
+    Auction getClosedAuction(String auctionID) throws RemoteException;
+
     /**
      * Accessor for registered Clients
      * @return list of all the clients in the auctioning system
@@ -95,8 +189,8 @@ public interface Server_Interface extends Remote{
     boolean validateUserName(String userName) throws RemoteException;
 
     /**
-     * obtains the userPassoword from the file and generates a key based on the password
-     * @param keyFileName the name of the file that contains the password
+     * obtains the userPassoword from the credential store and generates a key based on the password
+     * @param keyFileName the name of the user
      * @return an istance of a key
      * @throws RemoteException
      */
@@ -105,7 +199,7 @@ public interface Server_Interface extends Remote{
     /**
      * The server is authenticated by encrypting it's challenge using the key
      * stored when the user registered
-     * @param key Name of the file that holds the key
+     * @param key Name of the user whose key is used
      * @param randomNum the chalenge to solve
      * @return the solved challenge and his challenge for the client
      * @throws RemoteException
@@ -115,7 +209,7 @@ public interface Server_Interface extends Remote{
     /**
      * Decrypts the challenge of the client to authenticate the client
      * @param authenticationReply the random number encypted using the user password from input
-     * @param keyFileName the name of the file to load the key
+     * @param keyFileName the name of the user whose key is used
      * @return true if user is valid false otherwise
      * @throws RemoteException
      */
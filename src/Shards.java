@@ -0,0 +1,57 @@
+/**
+ * The partitioning of the auctions into shards. Every shard is owned by its own group of replicas,
+ * with its own primary and its own stream of mutations, so the writes of different shards are executed
+ * and replicated in parallel. The number of shards is set with the system property auction.shards
+ * and must be the same on every replica and front-end server, the shard of a replica is set with auction.shard.
+ * An auction belongs to the shard of its ID: the primary of a shard only gives IDs that belong to its shard,
+ * so a front-end server finds the owner of an auction from its ID alone.
+ * The clients are registered in CLIENT_SHARD.
+ * @author Emmeleia Arakleitou
+ */
+public class Shards {
+
+    public static final int COUNT = Math.max(1, Integer.getInteger("auction.shards", 1));
+    public static final int CLIENT_SHARD = 0;
+
+    /**
+     * Returns the shard of the replica of this process
+     * @return the shard set with auction.shard, 0 by default
+     * @throws IllegalArgumentException if the shard is not between 0 and COUNT - 1
+     */
+    public static int configured()
+    {
+        int shard = Integer.getInteger("auction.shard", 0);
+        if(shard < 0 || shard >= COUNT)
+            throw new IllegalArgumentException("auction.shard must be between 0 and " + (COUNT - 1));
+        return shard;
+    }
+
+    /**
+     * Returns the shard that owns an auction
+     * @param auctionID ID of the auction
+     * @return the shard, between 0 and COUNT - 1
+     */
+    public static int shardOf(String auctionID)
+    {
+        if(COUNT == 1 || auctionID == null)
+            return 0;
+        try {
+            return (int) Math.floorMod(Long.parseLong(auctionID), (long) COUNT);
+        } catch (NumberFormatException e) {
+            //IDs are numbers, an other ID only needs to go to a shard, where it is not found.
+            return Math.floorMod(auctionID.hashCode(), COUNT);
+        }
+    }
+
+    /**
+     * Returns the next ID given by the primary of a shard
+     * @param lastID the largest ID used in the shard
+     * @param shard the shard
+     * @return the smallest ID after lastID that belongs to the shard
+     */
+    public static long nextID(long lastID, int shard)
+    {
+        long next = lastID + 1;
+        return next + Math.floorMod(shard - next, (long) COUNT);
+    }
+}
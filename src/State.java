@@ -1,20 +1,38 @@
-import java.io.Serializable;
+import org.jgroups.util.SizeStreamable;
+import org.jgroups.util.Bits;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.io.*;
 
 
 /**
  * This class is used to keep the state of the data used in the auctioning system
  * @author Emmeleia Arakleitou
  */
-public class State  implements Serializable{
+public class State  implements SizeStreamable, Externalizable{
 
     private HashMap<String,Auction> activeAuctions = new HashMap<>();
     private HashMap<String,Client> registeredClients = new HashMap<>();
     private HashMap<String,Auction> closedAuctions = new HashMap<>();
+    //the accepted bids of the active and recently closed auctions, by auction ID.
+    private HashMap<String,BidHistory> bidHistories = new HashMap<>();
+    //the IDs of the clients that bid for the active auctions, accepted or not, by auction ID.
+    private HashMap<String,Set<String>> participants = new HashMap<>();
+    private long sequence;
+    //the epoch of the primary that wrote the last mutation applied to the state.
+    private long epoch;
+    //the largest ID of an auction or a client in the state, derived from the keys of the maps.
+    private long lastID;
+    //secondary indexes of registeredClients, rebuilt from the clients and never transferred.
+    private transient HashMap<String,String> clientsByName = new HashMap<>();
+    private transient HashMap<String,String> clientsByPass = new HashMap<>();
 
 
     /**
-     * accessor for closed auctions
+     * accessor for closed auctions, the auctions closed long ago are in the archive of the replicas instead
      * @return
      */
     public HashMap<String, Auction> getClosedAuctions() {
@@ -30,19 +48,56 @@ public class State  implements Serializable{
     }
 
     /**
-     * Accessor for registered clients in the system
+     * Accessor for registered clients in the system. The map must only be changed with apply
+     * or setRegisteredClients, which keep the indexes of the clients up to date.
      * @return
      */
     public HashMap<String, Client> getRegisteredClients() {
         return registeredClients;
     }
 
+    /**
+     * Accessor for the bid histories of the active and recently closed auctions, the histories of the archived
+     * auctions are in the archive of the replicas instead. The histories are changed in place by apply,
+     * use BidHistory.snapshot to read a history without holding the lock of the state.
+     * @return
+     */
+    public HashMap<String, BidHistory> getBidHistories() {
+        return bidHistories;
+    }
+
+    /**
+     * Accessor for the participants of the active auctions, the clients that bid for them whether the bid
+     * was accepted or not. The sets are replaced by apply, never changed, so they can be read after the lock is released.
+     * @return
+     */
+    public HashMap<String, Set<String>> getParticipants() {
+        return participants;
+    }
+
+    /**
+     * Mutator that updates the participants of the active auctions
+     * @param participants
+     */
+    public void setParticipants(HashMap<String, Set<String>> participants) {
+        this.participants = participants;
+    }
+
+    /**
+     * Mutator that updates the bid histories of the auctions
+     * @param bidHistories
+     */
+    public void setBidHistories(HashMap<String, BidHistory> bidHistories) {
+        this.bidHistories = bidHistories;
+    }
+
     /**
      * Mutator that updates the state of the closed auctions
      * @param closedAuctions
      */
     public void setClosedAuctions(HashMap<String, Auction> closedAuctions) {
         this.closedAuctions = closedAuctions;
+        noteIDs(closedAuctions.keySet());
     }
 
     /**
@@ -51,6 +106,7 @@ public class State  implements Serializable{
      */
     public void setActiveAuctions(HashMap<String, Auction> activeAuctions) {
         this.activeAuctions = activeAuctions;
+        noteIDs(activeAuctions.keySet());
     }
 
     /**
@@ -59,5 +115,418 @@ public class State  implements Serializable{
      */
     public void setRegisteredClients(HashMap<String, Client> registeredClients) {
         this.registeredClients = registeredClients;
+        noteIDs(registeredClients.keySet());
+        reindexClients();
+    }
+
+    /**
+     * Returns the largest ID of an auction or a client in the state. The primary gives the next ID
+     * to a new auction or client, so IDs are never used twice and are found in constant time.
+     * @return long
+     */
+    public long getLastID() {
+        return lastID;
+    }
+
+    /**
+     * Records an ID used by an auction or a client. IDs that are not numbers are ignored.
+     * @param id the ID
+     */
+    private void noteID(String id)
+    {
+        try {
+            lastID = Math.max(lastID, Long.parseLong(id));
+        } catch (NumberFormatException e) {
+            //IDs are numbers, an other key can not be given by the primary.
+        }
+    }
+
+    /**
+     * Records the IDs used by the entries of a map
+     * @param ids the IDs
+     */
+    private void noteIDs(Iterable<String> ids)
+    {
+        for(String id : ids)
+            noteID(id);
+    }
+
+    /**
+     * Returns the client with a user name
+     * @param userName the name of the client
+     * @return the client, or null if no client has that name
+     */
+    public Client getClientByName(String userName) {
+        String clientID = clientsByName.get(userName);
+        return clientID == null ? null : registeredClients.get(clientID);
+    }
+
+    /**
+     * Returns the client with a password
+     * @param password the password of the client
+     * @return the client, or null if no client has that password
+     */
+    public Client getClientByPass(String password) {
+        String clientID = clientsByPass.get(password);
+        return clientID == null ? null : registeredClients.get(clientID);
+    }
+
+    /**
+     * Accessor for the sequence number of the last mutation applied to the state
+     * @return
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Mutator for the sequence number of the last mutation applied to the state
+     * @param sequence
+     */
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Accessor for the epoch of the primary that wrote the last mutation applied to the state
+     * @return the epoch, 0 if the mutations were written before the primaries had one
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Mutator for the epoch of the primary that wrote the last mutation applied to the state
+     * @param epoch
+     */
+    public void setEpoch(long epoch) {
+        this.epoch = epoch;
+    }
+
+    /**
+     * Returns a copy of the state. The maps are copied but not the auctions and the clients,
+     * which are never changed after they are added to the state. The bid histories are snapshots.
+     * @return State
+     */
+    public State copy()
+    {
+        State copy = new State();
+        copy.activeAuctions = new HashMap<>(activeAuctions);
+        copy.closedAuctions = new HashMap<>(closedAuctions);
+        copy.bidHistories = new HashMap<>(bidHistories.size() * 4 / 3 + 1);
+        for(Map.Entry<String,BidHistory> entry : bidHistories.entrySet())
+            copy.bidHistories.put(entry.getKey(), entry.getValue().snapshot());
+        copy.participants = new HashMap<>(participants);
+        copy.registeredClients = new HashMap<>(registeredClients);
+        copy.clientsByName = new HashMap<>(clientsByName);
+        copy.clientsByPass = new HashMap<>(clientsByPass);
+        copy.sequence = sequence;
+        copy.epoch = epoch;
+        copy.lastID = lastID;
+        return copy;
+    }
+
+    /**
+     * Applies a single change to the data and records its sequence number and epoch.
+     * Auctions are replaced by changed copies so that a copy of the state is not affected.
+     * @param mutation the change to apply
+     */
+    public void apply(Mutation mutation)
+    {
+        Auction auction;
+        switch (mutation.getType())
+        {
+            case AUCTION_CREATED:
+                activeAuctions.put(mutation.getKey(),mutation.getAuction());
+                noteID(mutation.getKey());
+                break;
+            case AUCTION_CLOSED:
+                auction = activeAuctions.remove(mutation.getKey());
+                if(auction != null) {
+                    auction = new Auction(auction);
+                    auction.setAuctionStatus("Closed");
+                    auction.setClosedTime(mutation.getTime());
+                    closedAuctions.put(mutation.getKey(),auction);
+                    participants.remove(mutation.getKey());
+                    //no more bids are appended to the history of a closed auction.
+                    BidHistory closedHistory = bidHistories.get(mutation.getKey());
+                    if(closedHistory != null)
+                        closedHistory.trimToSize();
+                }
+                break;
+            case AUCTION_ARCHIVED:
+                //the replicas keep the auction and its history in their archive, see Auction_Server_Replica.applied.
+                closedAuctions.remove(mutation.getKey());
+                bidHistories.remove(mutation.getKey());
+                break;
+            case CLIENT_REGISTERED:
+                registeredClients.put(mutation.getKey(),mutation.getClient());
+                indexClient(mutation.getKey(),mutation.getClient());
+                noteID(mutation.getKey());
+                break;
+            case BID_ACCEPTED:
+                auction = activeAuctions.get(mutation.getKey());
+                if(auction != null) {
+                    auction = new Auction(auction);
+                    auction.setHighestBid(mutation.getPrice());
+                    auction.setHighestBidderID(mutation.getBidderID());
+                    activeAuctions.put(mutation.getKey(),auction);
+                    BidHistory history = bidHistories.get(mutation.getKey());
+                    if(history == null) {
+                        history = new BidHistory();
+                        bidHistories.put(mutation.getKey(), history);
+                    }
+                    history.append(mutation.getPrice(), BidHistory.bidderID(mutation.getBidderID()), mutation.getTime());
+                    addParticipant(mutation.getKey(), mutation.getBidderID());
+                }
+                break;
+            case PARTICIPANT_ADDED:
+                if(activeAuctions.containsKey(mutation.getKey()))
+                    addParticipant(mutation.getKey(), mutation.getBidderID());
+                break;
+        }
+        this.sequence = mutation.getSequence();
+        this.epoch = mutation.getEpoch();
+    }
+
+    /**
+     * Checks if a client bid for an active auction
+     * @param auctionID ID of the auction
+     * @param clientID ID of the client
+     * @return true if the client is a participant of the auction
+     */
+    public boolean isParticipant(String auctionID, String clientID)
+    {
+        Set<String> clients = participants.get(auctionID);
+        return clients != null && clients.contains(clientID);
+    }
+
+    /**
+     * Records a client as a participant of an auction. The set is replaced by a changed copy
+     * so that a copy of the state is not affected.
+     * @param auctionID ID of the auction
+     * @param clientID ID of the client
+     */
+    private void addParticipant(String auctionID, String clientID)
+    {
+        if(clientID == null || isParticipant(auctionID, clientID))
+            return;
+        Set<String> clients = participants.get(auctionID);
+        HashSet<String> changed = clients == null ? new HashSet<>() : new HashSet<>(clients);
+        changed.add(clientID);
+        participants.put(auctionID, Collections.unmodifiableSet(changed));
+    }
+
+    /**
+     * Adds a client to the indexes. When clients share a name or a password the one with the
+     * smallest ID is indexed, so every replica indexes the same client whatever the order of the map.
+     * @param clientID ID of the client
+     * @param client the client
+     */
+    private void indexClient(String clientID, Client client)
+    {
+        if(client == null)
+            return;
+        index(clientsByName, client.getName(), clientID);
+        index(clientsByPass, client.getUserPass(), clientID);
+    }
+
+    /**
+     * Adds the ID of a client to an index unless a client with a smaller ID has the same key
+     * @param index the index
+     * @param key the name or password of the client
+     * @param clientID ID of the client
+     */
+    private static void index(HashMap<String,String> index, String key, String clientID)
+    {
+        if(key == null)
+            return;
+        String indexed = index.get(key);
+        if(indexed == null || AuctionOrder.compareIDs(clientID, indexed) < 0)
+            index.put(key, clientID);
+    }
+
+    /**
+     * Rebuilds the indexes of the clients after the registered clients are replaced
+     */
+    private void reindexClients()
+    {
+        clientsByName = new HashMap<>();
+        clientsByPass = new HashMap<>();
+        for(Map.Entry<String,Client> entry : registeredClients.entrySet())
+            indexClient(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * Writes the state in the binary format
+     * @param out the output to write to
+     * @throws IOException
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException
+    {
+        WireFormat.writeVersion(out);
+        Bits.writeLong(sequence, out);
+        Bits.writeLong(epoch, out);
+        writeAuctions(activeAuctions, out);
+        writeAuctions(closedAuctions, out);
+        out.writeInt(registeredClients.size());
+        for(Map.Entry<String,Client> entry : registeredClients.entrySet())
+        {
+            Bits.writeString(entry.getKey(), out);
+            Client.write(entry.getValue(), out);
+        }
+        out.writeInt(bidHistories.size());
+        for(Map.Entry<String,BidHistory> entry : bidHistories.entrySet())
+        {
+            Bits.writeString(entry.getKey(), out);
+            entry.getValue().writeTo(out);
+        }
+        out.writeInt(participants.size());
+        for(Map.Entry<String,Set<String>> entry : participants.entrySet())
+        {
+            Bits.writeString(entry.getKey(), out);
+            out.writeInt(entry.getValue().size());
+            for(String clientID : entry.getValue())
+                Bits.writeString(clientID, out);
+        }
+    }
+
+    /**
+     * Reads the state from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    @Override
+    public void readFrom(DataInput in) throws IOException
+    {
+        byte version = WireFormat.readVersion(in);
+        sequence = Bits.readLong(in);
+        epoch = version >= 8 ? Bits.readLong(in) : 0;
+        activeAuctions = readAuctions(in);
+        closedAuctions = readAuctions(in);
+        int clients = in.readInt();
+        registeredClients = new HashMap<>();
+        for(int i = 0; i < clients; i++)
+            registeredClients.put(Bits.readString(in), Client.read(in));
+        int histories = in.readInt();
+        bidHistories = new HashMap<>();
+        for(int i = 0; i < histories; i++)
+        {
+            String key = Bits.readString(in);
+            BidHistory history = new BidHistory();
+            history.readFrom(in);
+            bidHistories.put(key, history);
+        }
+        //a snapshot written before version 6 has no participants, the bidders that were rejected are not known.
+        int auctions = version >= 6 ? in.readInt() : 0;
+        participants = new HashMap<>();
+        for(int i = 0; i < auctions; i++)
+        {
+            String key = Bits.readString(in);
+            int size = in.readInt();
+            HashSet<String> bidders = new HashSet<>();
+            for(int j = 0; j < size; j++)
+                bidders.add(Bits.readString(in));
+            participants.put(key, Collections.unmodifiableSet(bidders));
+        }
+        noteIDs(activeAuctions.keySet());
+        noteIDs(closedAuctions.keySet());
+        noteIDs(registeredClients.keySet());
+        reindexClients();
+    }
+
+    /**
+     * Returns the number of bytes of the binary format
+     * @return int
+     */
+    @Override
+    public int size()
+    {
+        int size = 1 + Bits.size(sequence) + Bits.size(epoch) + sizeAuctions(activeAuctions) + sizeAuctions(closedAuctions) + 4;
+        for(Map.Entry<String,Client> entry : registeredClients.entrySet())
+            size += Bits.size(entry.getKey()) + 1 + (entry.getValue() == null ? 0 : entry.getValue().size());
+        size += 4;
+        for(Map.Entry<String,BidHistory> entry : bidHistories.entrySet())
+            size += Bits.size(entry.getKey()) + entry.getValue().size();
+        size += 4;
+        for(Map.Entry<String,Set<String>> entry : participants.entrySet())
+        {
+            size += Bits.size(entry.getKey()) + 4;
+            for(String clientID : entry.getValue())
+                size += Bits.size(clientID);
+        }
+        return size;
+    }
+
+    /**
+     * Java serialization of the state in the binary format
+     * @param out the output to write to
+     * @throws IOException
+     */
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException
+    {
+        writeTo(out);
+    }
+
+    /**
+     * Java deserialization of the state from the binary format
+     * @param in the input to read from
+     * @throws IOException
+     */
+    @Override
+    public void readExternal(ObjectInput in) throws IOException
+    {
+        readFrom(in);
+    }
+
+    /**
+     * Writes a map of auctions as the number of entries followed by the entries
+     * @param auctions the auctions to write
+     * @param out the output to write to
+     * @throws IOException
+     */
+    private static void writeAuctions(HashMap<String,Auction> auctions, DataOutput out) throws IOException
+    {
+        out.writeInt(auctions.size());
+        for(Map.Entry<String,Auction> entry : auctions.entrySet())
+        {
+            Bits.writeString(entry.getKey(), out);
+            entry.getValue().writeTo(out);
+        }
+    }
+
+    /**
+     * Reads a map of auctions written by writeAuctions
+     * @param in the input to read from
+     * @return HashMap
+     * @throws IOException
+     */
+    private static HashMap<String,Auction> readAuctions(DataInput in) throws IOException
+    {
+        int size = in.readInt();
+        HashMap<String,Auction> auctions = new HashMap<>();
+        for(int i = 0; i < size; i++)
+        {
+            String key = Bits.readString(in);
+            Auction auction = new Auction();
+            auction.readFrom(in);
+            auctions.put(key, auction);
+        }
+        return auctions;
+    }
+
+    /**
+     * Returns the number of bytes written by writeAuctions
+     * @param auctions the auctions to write
+     * @return int
+     */
+    private static int sizeAuctions(HashMap<String,Auction> auctions)
+    {
+        int size = 4;
+        for(Map.Entry<String,Auction> entry : auctions.entrySet())
+            size += Bits.size(entry.getKey()) + entry.getValue().size();
+        return size;
     }
 }
@@ -0,0 +1,469 @@
+import org.jgroups.util.ByteArrayDataInputStream;
+import org.jgroups.ReceiverAdapter;
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.io.*;
+
+/**
+ * This class keeps a copy of the state of a shard of the auctioning system by joining the MY_SECOND_CLUSTER of the shard,
+ * receiving the state from the members that are already there and then applying the mutations
+ * that the primary replica multicasts, in the order given by their sequence number.
+ * A primary that replaces an other one writes its mutations with a higher epoch. The state is checked against
+ * the new primary before its first mutation is applied, and the mutations of the primaries it replaced are ignored.
+ * The replicas use it to follow the primary and the front-end server uses it as a cache of the catalogue.
+ * @author Emmeleia Arakleitou
+ */
+public class StateSubscriber extends ReceiverAdapter {
+
+    static final String SECOND_CLUSTER_NAME = "MY_SECOND_CLUSTER";
+    private static final int STATE_TRANSFER_TIMEOUT = 60000;
+    private static final long RECOVERY_RETRY_DELAY = 1000;
+    protected final State myState = new State();
+    private List<Mutation> pendingMutations;
+    //mutations received after a gap in the sequence, applied once the missed ones are received.
+    private final TreeMap<Long,Mutation> outOfOrder = new TreeMap<>();
+    private boolean recovering;
+    //the highest epoch of a primary the state was checked against, see applyChecked.
+    private long checkedEpoch;
+    //the highest epoch of the mutations received from a primary, applied or not.
+    private long receivedEpoch;
+    protected JChannel channelB;
+    //the closed auctions moved out of the state, kept by the replicas only.
+    protected ClosedAuctionArchive archive;
+    //the shard whose state is kept.
+    protected final int shard;
+
+    /**
+     * Constructor of a subscriber to the first shard
+     */
+    public StateSubscriber()
+    {
+        this(0);
+    }
+
+    /**
+     * Constructor of the class
+     * @param shard the shard whose state is kept
+     */
+    public StateSubscriber(int shard)
+    {
+        this.shard = shard;
+    }
+
+    /**
+     * Returns the name of the cluster of the mutations of a shard. The first shard uses MY_SECOND_CLUSTER,
+     * so a system with a single shard is not changed.
+     * @param shard the shard
+     * @return String
+     */
+    static String clusterName(int shard)
+    {
+        return shard == 0 ? SECOND_CLUSTER_NAME : SECOND_CLUSTER_NAME + "-" + shard;
+    }
+
+    /**
+     * Joins MY_SECOND_CLUSTER and receives the state of the system, unless catchUp brings the state up to date.
+     * Mutations that arrive while the state is transferred are kept until the state is set.
+     * @param name the logical name of this member, or null to generate one
+     * @throws Exception
+     */
+    public void subscribe(String name) throws Exception
+    {
+        synchronized (myState)
+        {
+            this.pendingMutations = new ArrayList<>();
+        }
+        this.channelB = StateTransfer.createChannel();
+        if(name != null)
+            this.channelB.setName(name);
+        this.channelB.setReceiver(this);
+        this.channelB.connect(clusterName(this.shard));
+        try {
+            if(!catchUp())
+                receiveState(stateProvider());
+        } finally {
+            applyPendingMutations();
+        }
+    }
+
+    /**
+     * Called after joining MY_SECOND_CLUSTER, before the state is transferred, to bring the state
+     * up to date without receiving all of it. The mutations that arrive meanwhile are applied after it.
+     * Returns false unless overridden.
+     * @return true if the state is up to date and must not be transferred
+     * @throws Exception
+     */
+    protected boolean catchUp() throws Exception
+    {
+        return false;
+    }
+
+    /**
+     * Receives the whole state from a member of MY_SECOND_CLUSTER, see setState
+     * @param provider the member, or null to ask the coordinator
+     * @throws Exception
+     */
+    protected void receiveState(Address provider) throws Exception
+    {
+        this.channelB.getState(provider,STATE_TRANSFER_TIMEOUT);
+    }
+
+    /**
+     * Returns the member asked for the state, which is the oldest other replica, since only the replicas
+     * have the archive of the closed auctions.
+     * @return the address of the replica, or null to ask the coordinator if there is no other replica
+     */
+    protected Address stateProvider()
+    {
+        for(Address replica : Auction_Server_Replica.replicasOf(this.channelB.getView()))
+            if(!replica.equals(this.channelB.getAddress()))
+                return replica;
+        return null;
+    }
+
+    /**
+     * Leaves MY_SECOND_CLUSTER.
+     */
+    public void unsubscribe()
+    {
+        if(this.channelB != null)
+            this.channelB.close();
+    }
+
+    /**
+     * receives a batch of mutations from the primary and applies every mutation
+     * that is the next one in the sequence.
+     * @param message
+     */
+    public void receive(Message message)
+    {
+        List<Mutation> mutations;
+        try {
+            mutations = Mutation.readBatch(new ByteArrayDataInputStream(message.getRawBuffer(),message.getOffset(),message.getLength()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        synchronized (myState)
+        {
+            if(this.pendingMutations != null)
+                this.pendingMutations.addAll(mutations);
+            else
+                for(Mutation mutation : mutations)
+                    applyInOrder(mutation);
+        }
+    }
+
+    /**
+     * Applies a mutation if it is the next one in the sequence. A mutation after a gap is kept until
+     * the missed mutations are received, and the missed mutations are asked for, so the state never
+     * skips a mutation of the primary. A mutation of a new primary is kept until the state is checked against it,
+     * and a mutation of a primary that was replaced is ignored, since the new primary reuses its sequence number.
+     * Must be called while holding the lock of the state.
+     * @param mutation the mutation received from the primary
+     */
+    protected void applyInOrder(Mutation mutation)
+    {
+        this.receivedEpoch = Math.max(this.receivedEpoch, mutation.getEpoch());
+        long epoch = followedEpoch();
+        if(mutation.getEpoch() < epoch)
+        {
+            System.out.println("[STATE] Ignored mutation " + mutation.getSequence() + " of epoch " + mutation.getEpoch()
+                    + ", its primary was replaced by the primary of epoch " + epoch);
+            return;
+        }
+        long expected = myState.getSequence() + 1;
+        if(mutation.getEpoch() > epoch)
+        {
+            //the last mutations of the state may be ones the new primary does not have.
+            if(mutation.getSequence() >= expected)
+                keep(mutation);
+            recoverMissed(0);
+            return;
+        }
+        //mutations already applied (including the ones sent by this member) are ignored.
+        if(mutation.getSequence() < expected)
+            return;
+        if(mutation.getSequence() > expected)
+        {
+            keep(mutation);
+            recoverMissed(0);
+            return;
+        }
+        myState.apply(mutation);
+        applied(mutation);
+        applyOutOfOrder();
+        if(!this.outOfOrder.isEmpty())
+            recoverMissed(0);
+    }
+
+    /**
+     * Returns the epoch of the primary whose mutations are applied to the state.
+     * Must be called while holding the lock of the state.
+     * @return long
+     */
+    private long followedEpoch()
+    {
+        return Math.max(myState.getEpoch(), this.checkedEpoch);
+    }
+
+    /**
+     * Keeps a mutation that can not be applied yet. Of two mutations with the same sequence number
+     * the one of the newer primary is kept.
+     * Must be called while holding the lock of the state.
+     * @param mutation the mutation received from the primary
+     */
+    private void keep(Mutation mutation)
+    {
+        this.outOfOrder.merge(mutation.getSequence(), mutation,
+                (kept, received) -> received.getEpoch() > kept.getEpoch() ? received : kept);
+    }
+
+    /**
+     * Applies the kept mutations that follow the state and drops the ones the state already has
+     * or that belong to a replaced primary. Stops at a mutation of a new primary.
+     * Must be called while holding the lock of the state.
+     */
+    private void applyOutOfOrder()
+    {
+        while (!this.outOfOrder.isEmpty() && this.outOfOrder.firstKey() <= myState.getSequence() + 1)
+        {
+            Mutation mutation = this.outOfOrder.firstEntry().getValue();
+            boolean next = mutation.getSequence() == myState.getSequence() + 1;
+            if(next && mutation.getEpoch() > followedEpoch())
+                return;
+            this.outOfOrder.pollFirstEntry();
+            if(next && mutation.getEpoch() == followedEpoch())
+            {
+                myState.apply(mutation);
+                applied(mutation);
+            }
+        }
+    }
+
+    /**
+     * Applies the mutations fetched from the primary once the state is checked against them: the primary
+     * must have applied the last mutation of the state in the same epoch, otherwise the state holds mutations
+     * of a replaced primary that the primary does not have. The mutations are applied whatever their epoch,
+     * since they are the history of the primary.
+     * Must be called while holding the lock of the state.
+     * @param mutations the mutations the primary applied, from the one before the last mutation of the state on
+     * @return true if the state follows the primary and the mutations were applied, false if the whole state must be received
+     */
+    protected boolean applyChecked(List<Mutation> mutations)
+    {
+        long sequence = myState.getSequence();
+        boolean checked = sequence == 0;
+        long epoch = 0;
+        for(Mutation mutation : mutations)
+        {
+            if(mutation.getSequence() == sequence)
+                checked = mutation.getEpoch() == myState.getEpoch();
+            epoch = Math.max(epoch, mutation.getEpoch());
+        }
+        if(!checked)
+            return false;
+        this.checkedEpoch = Math.max(this.checkedEpoch, epoch);
+        for(Mutation mutation : mutations)
+        {
+            if(mutation.getSequence() == myState.getSequence() + 1)
+            {
+                myState.apply(mutation);
+                applied(mutation);
+            }
+        }
+        applyOutOfOrder();
+        return true;
+    }
+
+    /**
+     * Drops the kept mutations, called by a replica that becomes the primary once it caught up with the other
+     * replicas, since none of them has the mutations missing before the kept ones.
+     * Must be called while holding the lock of the state.
+     */
+    protected void dropOutOfOrder()
+    {
+        if(!this.outOfOrder.isEmpty())
+            System.out.println("[STATE] Dropped " + this.outOfOrder.size() + " mutations of the previous primary from mutation "
+                    + this.outOfOrder.firstKey() + " on, no replica has the ones before them");
+        this.outOfOrder.clear();
+    }
+
+    /**
+     * Returns the highest epoch of the mutations received from a primary.
+     * Must be called while holding the lock of the state.
+     * @return long
+     */
+    protected long getReceivedEpoch()
+    {
+        return Math.max(this.receivedEpoch, myState.getEpoch());
+    }
+
+    /**
+     * Starts a thread that receives the missed mutations, unless one is already running
+     * or this member writes the mutations itself.
+     * Must be called while holding the lock of the state.
+     * @param delay the time to wait before asking, in milliseconds
+     */
+    private void recoverMissed(long delay)
+    {
+        if(this.recovering || leads())
+            return;
+        this.recovering = true;
+        if(!this.outOfOrder.isEmpty() && this.outOfOrder.firstKey() > myState.getSequence() + 1)
+            System.out.println("[STATE] Missed mutations " + (myState.getSequence() + 1) + " to " + (this.outOfOrder.firstKey() - 1));
+        else
+            System.out.println("[STATE] Checking the state up to mutation " + myState.getSequence() + " against the primary of epoch " + this.receivedEpoch);
+        Thread recovery = new Thread(() -> recover(delay), "missed-mutations-" + this.shard);
+        recovery.setDaemon(true);
+        recovery.start();
+    }
+
+    /**
+     * Receives the missed mutations with fetchMissed, from the one before the last mutation of the state on
+     * so the state is checked against them, or the whole state if they can not be fetched or the state
+     * does not follow them, then applies the kept mutations. Tries again while there is still a gap.
+     * @param delay the time to wait before asking, in milliseconds
+     */
+    private void recover(long delay)
+    {
+        try {
+            Thread.sleep(delay);
+            long sequence;
+            synchronized (myState)
+            {
+                sequence = myState.getSequence();
+            }
+            List<Mutation> missed = fetchMissed(Math.max(0, sequence - 1));
+            boolean caughtUp;
+            synchronized (myState)
+            {
+                caughtUp = missed != null && applyChecked(missed);
+            }
+            if(!caughtUp)
+            {
+                System.out.println("[STATE] The missed mutations after " + sequence + " can not be fetched"
+                        + " or do not follow the state, receiving the whole state");
+                receiveState(stateProvider());
+            }
+        } catch (Exception e) {
+            System.out.println("[STATE] Failed to receive the missed mutations: " + e);
+        } finally {
+            synchronized (myState)
+            {
+                this.recovering = false;
+                applyOutOfOrder();
+                if(!this.outOfOrder.isEmpty())
+                    recoverMissed(RECOVERY_RETRY_DELAY);
+            }
+        }
+    }
+
+    /**
+     * Checks if this member writes the mutations of the shard itself, then the gaps in the sequence
+     * are not recovered from an other member. Returns false unless overridden.
+     * @return true if this member is the primary
+     */
+    protected boolean leads()
+    {
+        return false;
+    }
+
+    /**
+     * Returns the mutations the primary applied after a sequence number, used to fill a gap in the sequence
+     * without transferring the whole state. Returns null unless overridden, then the whole state is transferred.
+     * @param sequence the sequence number of the last mutation of the state
+     * @return the mutations after sequence, or null if they can not be fetched
+     * @throws Exception
+     */
+    protected List<Mutation> fetchMissed(long sequence) throws Exception
+    {
+        return null;
+    }
+
+    /**
+     * Called after a mutation is applied to the state, while holding the lock of the state.
+     * Does nothing unless overridden.
+     * @param mutation the mutation that was applied
+     */
+    protected void applied(Mutation mutation)
+    {
+    }
+
+    /**
+     * Called after the state is replaced by the state received from an other member,
+     * while holding the lock of the state. Does nothing unless overridden.
+     */
+    protected void stateReplaced()
+    {
+    }
+
+    /**
+     * Applies the mutations received during the state transfer that are newer than the state.
+     */
+    private void applyPendingMutations()
+    {
+        synchronized (myState)
+        {
+            for(Mutation mutation : this.pendingMutations)
+                applyInOrder(mutation);
+            this.pendingMutations = null;
+        }
+    }
+
+    /**
+     * Streams the state of the system to a member entering the channel.
+     * Only a copy of the maps and the length of the archive are taken while holding the lock,
+     * the chunks and the archive are written without it.
+     * @param outputStream
+     */
+    public void getState(OutputStream outputStream)
+    {
+        try
+        {
+            State snapshot;
+            long archiveLength;
+            synchronized (myState)
+            {
+                snapshot = myState.copy();
+                archiveLength = this.archive == null ? -1 : this.archive.length();
+            }
+            StateTransfer.write(snapshot,this.archive,archiveLength,outputStream);
+        }catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sets the state - Set the data instatiated in this cluster member to the data held in the state.
+     * The chunks are read without holding the lock of the state.
+     * @param inputStream
+     */
+    public void setState(InputStream inputStream)
+    {
+        try {
+            State tempState  = StateTransfer.read(inputStream,this.archive);
+            synchronized (myState)
+            {
+                myState.setActiveAuctions(tempState.getActiveAuctions());
+                myState.setClosedAuctions(tempState.getClosedAuctions());
+                myState.setRegisteredClients(tempState.getRegisteredClients());
+                myState.setBidHistories(tempState.getBidHistories());
+                myState.setParticipants(tempState.getParticipants());
+                myState.setSequence(tempState.getSequence());
+                myState.setEpoch(tempState.getEpoch());
+                this.checkedEpoch = 0;
+                stateReplaced();
+            }
+        }catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+    }
+}
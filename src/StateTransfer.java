@@ -0,0 +1,175 @@
+import org.jgroups.protocols.pbcast.STATE_TRANSFER;
+import org.jgroups.protocols.pbcast.STATE;
+import org.jgroups.stack.ProtocolStack;
+import org.jgroups.JChannel;
+import org.jgroups.util.Util;
+import java.util.Map;
+import java.util.Set;
+import java.io.*;
+
+/**
+ * This class streams the state of the auctioning system to a member that joins the cluster.
+ * The auctions, the clients, the bid histories and the participants are written in chunks of a bounded number of entries,
+ * every chunk being a partial state in the binary format,
+ * so neither the member providing the state nor the member receiving it needs to
+ * serialize the whole state in one piece.
+ * The archive of the closed auctions follows the chunks and is copied as it is in the file, without decoding it.
+ * @author Emmeleia Arakleitou
+ */
+public class StateTransfer {
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Creates a channel that transfers the state with the streaming STATE protocol
+     * instead of the STATE_TRANSFER protocol of the default stack, which sends the state as a single message.
+     * @return JChannel
+     * @throws Exception
+     */
+    public static JChannel createChannel() throws Exception
+    {
+        JChannel channel = new JChannel();
+        ProtocolStack stack = channel.getProtocolStack();
+        STATE streamingState = new STATE();
+        streamingState.init();
+        stack.replaceProtocol(stack.findProtocol(STATE_TRANSFER.class), streamingState);
+        return channel;
+    }
+
+    /**
+     * Writes the state in chunks followed by the archive. The state should be a copy, so that it can be written
+     * without holding the lock of the live state.
+     * @param state the state to write
+     * @param archive the archive of the closed auctions, null if this member has no archive
+     * @param archiveLength the length of the archive when the state was copied
+     * @param outputStream the stream to the joining member
+     * @throws Exception
+     */
+    public static void write(State state, ClosedAuctionArchive archive, long archiveLength, OutputStream outputStream) throws Exception
+    {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE));
+        out.writeLong(state.getSequence());
+        out.writeLong(state.getEpoch());
+        out.writeInt(entries(state));
+
+        //Every chunk is a state holding at most CHUNK_SIZE of the entries, written in the binary format.
+        State chunk = new State();
+        for(Map.Entry<String,Auction> entry : state.getActiveAuctions().entrySet())
+        {
+            chunk.getActiveAuctions().put(entry.getKey(), entry.getValue());
+            chunk = writeIfFull(chunk, out);
+        }
+        for(Map.Entry<String,Auction> entry : state.getClosedAuctions().entrySet())
+        {
+            chunk.getClosedAuctions().put(entry.getKey(), entry.getValue());
+            chunk = writeIfFull(chunk, out);
+        }
+        for(Map.Entry<String,Client> entry : state.getRegisteredClients().entrySet())
+        {
+            chunk.getRegisteredClients().put(entry.getKey(), entry.getValue());
+            chunk = writeIfFull(chunk, out);
+        }
+        for(Map.Entry<String,BidHistory> entry : state.getBidHistories().entrySet())
+        {
+            chunk.getBidHistories().put(entry.getKey(), entry.getValue());
+            chunk = writeIfFull(chunk, out);
+        }
+        for(Map.Entry<String,Set<String>> entry : state.getParticipants().entrySet())
+        {
+            chunk.getParticipants().put(entry.getKey(), entry.getValue());
+            chunk = writeIfFull(chunk, out);
+        }
+        if(entries(chunk) > 0)
+            Util.writeByteBuffer(Util.streamableToByteBuffer(chunk), out);
+
+        //-1 tells the joining member to keep its own archive.
+        out.writeLong(archive == null ? -1 : archiveLength);
+        if(archive != null)
+            archive.copyTo(out, archiveLength);
+        out.flush();
+    }
+
+    /**
+     * Reads a state written by the write method chunk by chunk and prints the progress.
+     * The archive that follows replaces the archive of this member, or is skipped if this member has no archive.
+     * @param inputStream the stream from the member providing the state
+     * @param archive the archive of the closed auctions of this member, or null
+     * @return State
+     * @throws Exception
+     */
+    public static State read(InputStream inputStream, ClosedAuctionArchive archive) throws Exception
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE));
+        State state = new State();
+        state.setSequence(in.readLong());
+        state.setEpoch(in.readLong());
+        int size = in.readInt(), received = 0;
+
+        while (received < size)
+        {
+            State chunk = (State) Util.streamableFromByteBuffer(State.class, Util.readByteBuffer(in));
+            state.getActiveAuctions().putAll(chunk.getActiveAuctions());
+            state.getClosedAuctions().putAll(chunk.getClosedAuctions());
+            state.getRegisteredClients().putAll(chunk.getRegisteredClients());
+            state.getBidHistories().putAll(chunk.getBidHistories());
+            state.getParticipants().putAll(chunk.getParticipants());
+            received += entries(chunk);
+            System.out.println("[STATE] Received " + received + " of " + size + " auctions, clients, bid histories and participants");
+        }
+        long archiveLength = in.readLong();
+        if(archive != null && archiveLength >= 0)
+        {
+            archive.replace(in, archiveLength);
+            System.out.println("[STATE] Received " + archive.size() + " archived auctions");
+        }
+        else if(archiveLength > 0)
+            skip(in, archiveLength);
+        System.out.println("[STATE] Received the state up to mutation " + state.getSequence());
+        return state;
+    }
+
+    /**
+     * Skips the archive of an other member
+     * @param in the stream from the member
+     * @param length the number of bytes of the archive
+     * @throws IOException
+     */
+    private static void skip(DataInputStream in, long length) throws IOException
+    {
+        while (length > 0)
+        {
+            int skipped = in.skipBytes((int) Math.min(length, BUFFER_SIZE));
+            if(skipped <= 0)
+                throw new EOFException("The archive ended before " + length + " more bytes");
+            length -= skipped;
+        }
+    }
+
+    /**
+     * Writes a chunk if it holds CHUNK_SIZE entries.
+     * Every chunk is written as a separate buffer, since the object streams close the stream they write to.
+     * @param chunk the chunk to write
+     * @param out the stream to write to
+     * @return an empty chunk if the chunk was written, otherwise the same chunk
+     * @throws Exception
+     */
+    private static State writeIfFull(State chunk, DataOutputStream out) throws Exception
+    {
+        if(entries(chunk) < CHUNK_SIZE)
+            return chunk;
+        Util.writeByteBuffer(Util.streamableToByteBuffer(chunk), out);
+        return new State();
+    }
+
+    /**
+     * Returns the number of auctions, clients, bid histories and participated auctions in a chunk
+     * @param chunk the chunk
+     * @return int
+     */
+    private static int entries(State chunk)
+    {
+        return chunk.getActiveAuctions().size() + chunk.getClosedAuctions().size() + chunk.getRegisteredClients().size()
+                + chunk.getBidHistories().size() + chunk.getParticipants().size();
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel of the end times of the active auctions. Every level has 64 slots,
+ * a slot of the first level is one tick and a slot of every other level is a whole turn of the level below.
+ * An auction is put in the slot of the lowest level that reaches its end time and moves to the lower levels
+ * as the wheel turns, so adding and cancelling an auction take constant time and a tick only looks
+ * at the auctions of one slot, with no thread or timer per auction. Not thread safe, the replicas
+ * use it while holding the lock of the state.
+ * @author Emmeleia Arakleitou
+ */
+public class TimingWheel {
+
+    private static final int SLOT_BITS = 6, SLOTS = 1 << SLOT_BITS, LEVELS = 5;
+    //the furthest tick a slot can hold, later end times are put in it and moved again when it is reached.
+    private static final long HORIZON = (1L << (SLOT_BITS * LEVELS)) - 1;
+    private final long tickMillis;
+    private final Entry[][] slots = new Entry[LEVELS][SLOTS];
+    private final HashMap<String,Entry> entries = new HashMap<>();
+    //the next tick to process, every end time before it has expired.
+    private long currentTick;
+
+    /**
+     * Constructor of the class
+     * @param tickMillis the length of a tick in milliseconds, auctions expire at most one tick late
+     * @param now the current time in milliseconds since the epoch
+     */
+    public TimingWheel(long tickMillis, long now)
+    {
+        if(tickMillis <= 0)
+            throw new IllegalArgumentException("The tick must be positive");
+        this.tickMillis = tickMillis;
+        this.currentTick = now / tickMillis;
+    }
+
+    /**
+     * Adds an auction to the wheel, or moves it if it is already there
+     * @param auctionID ID of the auction
+     * @param endTime the time the auction expires in milliseconds since the epoch
+     */
+    public void schedule(String auctionID, long endTime)
+    {
+        cancel(auctionID);
+        //rounded up, so an auction never expires before its end time.
+        Entry entry = new Entry(auctionID, (endTime + tickMillis - 1) / tickMillis);
+        entries.put(auctionID, entry);
+        insert(entry);
+    }
+
+    /**
+     * Removes an auction from the wheel
+     * @param auctionID ID of the auction
+     * @return true if the auction was in the wheel
+     */
+    public boolean cancel(String auctionID)
+    {
+        Entry entry = entries.remove(auctionID);
+        if(entry == null)
+            return false;
+        unlink(entry);
+        return true;
+    }
+
+    /**
+     * Turns the wheel up to a time and removes the auctions that expired, one tick after the other
+     * @param now the current time in milliseconds since the epoch
+     * @param expired receives the ID of every auction that expired
+     */
+    public void advance(long now, Consumer<String> expired)
+    {
+        long nowTick = now / tickMillis;
+        while (currentTick <= nowTick)
+        {
+            //the slots of the higher levels that start at this tick are moved down, the highest first.
+            for(int level = LEVELS - 1; level > 0; level--)
+                if((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0)
+                    cascade(level, slotOf(currentTick, level));
+
+            int slot = slotOf(currentTick, 0);
+            Entry entry = slots[0][slot];
+            slots[0][slot] = null;
+            while (entry != null)
+            {
+                Entry next = entry.next;
+                entry.prev = entry.next = null;
+                if(entry.tick <= currentTick)
+                {
+                    entries.remove(entry.auctionID);
+                    expired.accept(entry.auctionID);
+                }
+                else
+                    insert(entry);
+                entry = next;
+            }
+            currentTick++;
+        }
+    }
+
+    /**
+     * Removes every auction from the wheel
+     */
+    public void clear()
+    {
+        entries.clear();
+        for(Entry[] level : slots)
+            Arrays.fill(level, null);
+    }
+
+    /**
+     * Returns the number of auctions in the wheel
+     * @return int
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Moves the auctions of a slot to the slots of the lower levels
+     * @param level the level of the slot
+     * @param slot the index of the slot
+     */
+    private void cascade(int level, int slot)
+    {
+        Entry entry = slots[level][slot];
+        slots[level][slot] = null;
+        while (entry != null)
+        {
+            Entry next = entry.next;
+            entry.prev = entry.next = null;
+            insert(entry);
+            entry = next;
+        }
+    }
+
+    /**
+     * Puts an auction in the slot of the lowest level that reaches its end time
+     * @param entry the auction
+     */
+    private void insert(Entry entry)
+    {
+        long tick = Math.max(entry.tick, currentTick);
+        long delta = Math.min(tick - currentTick, HORIZON);
+        tick = currentTick + delta;
+        int level = 0;
+        while (level < LEVELS - 1 && (delta >>> (SLOT_BITS * (level + 1))) != 0)
+            level++;
+        //the slot of the current turn of a level was already moved down, so the auction goes to a lower level.
+        while (level > 0 && (tick >>> (SLOT_BITS * level)) == (currentTick >>> (SLOT_BITS * level)))
+            level--;
+        int slot = slotOf(tick, level);
+        entry.level = level;
+        entry.slot = slot;
+        entry.next = slots[level][slot];
+        if(entry.next != null)
+            entry.next.prev = entry;
+        slots[level][slot] = entry;
+    }
+
+    /**
+     * Removes an auction from its slot
+     * @param entry the auction
+     */
+    private void unlink(Entry entry)
+    {
+        if(entry.prev != null)
+            entry.prev.next = entry.next;
+        else
+            slots[entry.level][entry.slot] = entry.next;
+        if(entry.next != null)
+            entry.next.prev = entry.prev;
+        entry.prev = entry.next = null;
+    }
+
+    /**
+     * Returns the slot of a level that holds a tick
+     * @param tick the tick
+     * @param level the level
+     * @return the index of the slot
+     */
+    private static int slotOf(long tick, int level)
+    {
+        return (int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+    }
+
+    /**
+     * An auction in the wheel, linked to the other auctions of its slot
+     */
+    private static class Entry {
+        final String auctionID;
+        final long tick;
+        int level, slot;
+        Entry prev, next;
+
+        Entry(String auctionID, long tick)
+        {
+            this.auctionID = auctionID;
+            this.tick = tick;
+        }
+    }
+}
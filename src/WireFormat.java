@@ -0,0 +1,81 @@
+import org.jgroups.util.Bits;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Helpers for the binary encoding of the objects sent between the cluster members and to the clients.
+ * Every encoded object starts with the version of the format so that the encoding can change
+ * without a replica silently reading data written by a different version.
+ * The same format is stored on the disk by the replicas, in the write-ahead log, the snapshot and the archive,
+ * so a new version must still read every version from MIN_VERSION on: readFrom branches on the version
+ * and gives the fields added later their default value. The data directory of a replica stays readable after an upgrade.
+ * @author Emmeleia Arakleitou
+ */
+public class WireFormat {
+
+    //2: the amounts of money are written as compressed longs of minor units
+    //3: the accepted bids carry their time and the state carries the bid histories
+    //4: the closed auctions carry the time they were closed
+    //5: the auctions carry the time they are closed automatically
+    //6: the state carries the participants of the active auctions
+    //7: the archived auctions carry their bid history
+    //8: the mutations and the state carry the epoch of the primary
+    public static final byte VERSION = 8;
+    //the first version written to the disk, by the archive and the write-ahead log. Older data is never stored.
+    public static final byte MIN_VERSION = 4;
+
+    /**
+     * Writes the version of the format
+     * @param out the output to write to
+     * @throws IOException
+     */
+    public static void writeVersion(DataOutput out) throws IOException
+    {
+        out.writeByte(VERSION);
+    }
+
+    /**
+     * Reads the version of the format and rejects data written with a version older than MIN_VERSION
+     * or newer than this one
+     * @param in the input to read from
+     * @return the version, which tells which fields follow
+     * @throws IOException if the version is not supported
+     */
+    public static byte readVersion(DataInput in) throws IOException
+    {
+        byte version = in.readByte();
+        if(version < MIN_VERSION || version > VERSION)
+            throw new IOException("Unsupported wire format version " + version);
+        return version;
+    }
+
+    /**
+     * Writes a byte array prefixed by its length
+     * @param bytes the array to write, can be null
+     * @param out the output to write to
+     * @throws IOException
+     */
+    public static void writeBytes(byte[] bytes, DataOutput out) throws IOException
+    {
+        out.writeInt(bytes == null ? -1 : bytes.length);
+        if(bytes != null)
+            out.write(bytes);
+    }
+
+    /**
+     * Reads a byte array written by writeBytes
+     * @param in the input to read from
+     * @return byte[] or null
+     * @throws IOException
+     */
+    public static byte[] readBytes(DataInput in) throws IOException
+    {
+        int length = in.readInt();
+        if(length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
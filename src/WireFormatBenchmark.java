@@ -0,0 +1,204 @@
+import org.jgroups.util.ByteArrayDataOutputStream;
+import org.jgroups.util.ByteArrayDataInputStream;
+import org.jgroups.util.SizeStreamable;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.io.*;
+
+/**
+ * Compares the size and the encoding and decoding time of the binary format
+ * with Java serialization (ObjectOutputStream), as used by RMI and for objects nested in collections.
+ * Every object is measured three ways:
+ * java.io is the default serialized form, measured on a plain Serializable copy with the fields the class had
+ * before the binary format, since the classes now serialize through the binary format;
+ * rmi is Java serialization of the class as it is, which is what RMI sends;
+ * binary is the binary format on its own, as sent between the cluster members.
+ * Usage: WireFormatBenchmark [iterations]
+ * @author Emmeleia Arakleitou
+ */
+public class WireFormatBenchmark {
+
+    private static int iterations;
+
+    public static void main(String[] args) throws Exception
+    {
+        iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        Auction auction = sampleAuction(1);
+        Client client = new Client("ALICE", "ALICE@GMAIL.COM", "SECRETPASS");
+        AuthenticationReply reply = new AuthenticationReply(new byte[16]);
+        State state = new State();
+        PlainState plainState = new PlainState();
+        for(int i = 0; i < 100; i++)
+        {
+            Client user = new Client("USER" + i, "USER" + i + "@GMAIL.COM", "PASSWORD" + i);
+            state.getActiveAuctions().put(Integer.toString(i), sampleAuction(i));
+            state.getRegisteredClients().put(Integer.toString(i), user);
+            plainState.activeAuctions.put(Integer.toString(i), new PlainAuction(sampleAuction(i)));
+            plainState.registeredClients.put(Integer.toString(i), new PlainClient("USER" + i, "USER" + i + "@GMAIL.COM", "PASSWORD" + i));
+        }
+
+        System.out.format("%-34s%-10s%12s%14s%14s%n", "Object", "Format", "Bytes", "Encode (ns)", "Decode (ns)");
+        compare("Auction", new PlainAuction(auction), auction);
+        compare("AuthenticationReply", new PlainAuthenticationReply(reply), reply);
+        compare("State (100 auctions, 100 clients)", plainState, state);
+
+        //A client can not be decoded on its own with the Streamable interface, it is written with its kind.
+        measureSerializable("Client", "java.io", new PlainClient("ALICE", "ALICE@GMAIL.COM", "SECRETPASS"));
+        measureSerializable("Client", "rmi", client);
+        byte[] bytes = encode(out -> Client.write(client, out));
+        long encode = time(() -> encode(out -> Client.write(client, out)));
+        long decode = time(() -> Client.read(new ByteArrayDataInputStream(bytes)));
+        print("Client", "binary", bytes.length, encode, decode);
+    }
+
+    /**
+     * Measures the three formats for an object
+     * @param name the name printed in the table
+     * @param plain the plain Serializable copy of the object
+     * @param object the object to measure
+     * @throws Exception
+     */
+    private static void compare(String name, Serializable plain, SizeStreamable object) throws Exception
+    {
+        measureSerializable(name, "java.io", plain);
+        measureSerializable(name, "rmi", object);
+        byte[] bytes = encode(object::writeTo);
+        long encode = time(() -> encode(object::writeTo));
+        long decode = time(() -> {
+            SizeStreamable copy = object.getClass().getDeclaredConstructor().newInstance();
+            copy.readFrom(new ByteArrayDataInputStream(bytes));
+            return copy;
+        });
+        print(name, "binary", bytes.length, encode, decode);
+    }
+
+    /**
+     * Measures Java serialization for an object
+     * @param name the name printed in the table
+     * @param format the name of the format printed in the table
+     * @param object the object to measure
+     * @throws Exception
+     */
+    private static void measureSerializable(String name, String format, Object object) throws Exception
+    {
+        byte[] bytes = serialize(object);
+        long encode = time(() -> serialize(object));
+        long decode = time(() -> new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject());
+        print(name, format, bytes.length, encode, decode);
+    }
+
+    private static byte[] serialize(Object object) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encode(Writer writer) throws Exception
+    {
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream(256, true);
+        writer.write(out);
+        byte[] bytes = new byte[out.position()];
+        System.arraycopy(out.buffer(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * Runs a task once for every iteration to warm up and then returns the average time of a second round
+     * @param task the task to measure
+     * @return the average time in nanoseconds
+     * @throws Exception
+     */
+    private static long time(Task task) throws Exception
+    {
+        for(int i = 0; i < iterations; i++)
+            task.run();
+        long start = System.nanoTime();
+        for(int i = 0; i < iterations; i++)
+            task.run();
+        return (System.nanoTime() - start) / iterations;
+    }
+
+    private static void print(String name, String format, int bytes, long encode, long decode)
+    {
+        System.out.format("%-34s%-10s%12d%14d%14d%n", name, format, bytes, encode, decode);
+    }
+
+    private static Auction sampleAuction(int i)
+    {
+        Auction auction = new Auction("Vintage oak writing desk " + i, new BigDecimal("120.00"), new BigDecimal("250.00"),
+                new BigDecimal("180.50"), Integer.toString(400 + i), Integer.toString(i % 10), "Active");
+        auction.setAuctionID(Long.toString(1000000L + i));
+        return auction;
+    }
+
+    /**
+     * An auction with the fields and the default serialized form of Auction before the binary format
+     */
+    private static class PlainAuction implements Serializable {
+        private String itemDesc, highestBidderID, auctionStatus, auctionID, sellerID;
+        private BigDecimal startingPrice, reservedPrice, highestBid;
+
+        PlainAuction(Auction auction)
+        {
+            this.itemDesc = auction.getItemDesc();
+            this.highestBidderID = auction.getHighestBidderID();
+            this.auctionStatus = auction.getAuctionStatus();
+            this.auctionID = auction.getAuctionID();
+            this.sellerID = auction.getSellerID();
+            this.startingPrice = auction.getStartingPrice();
+            this.reservedPrice = auction.getReservedPrice();
+            this.highestBid = auction.getHighestBid();
+        }
+    }
+
+    /**
+     * A client with the fields and the default serialized form of Client before the binary format
+     */
+    private static class PlainClient implements Serializable {
+        private String name, email, userID, userPass;
+        private String serverURL = "rmi://localhost/AuctioningServer";
+
+        PlainClient(String name, String email, String userPass)
+        {
+            this.name = name;
+            this.email = email;
+            this.userPass = userPass;
+        }
+    }
+
+    /**
+     * A reply with the fields and the default serialized form of AuthenticationReply before the binary format
+     */
+    private static class PlainAuthenticationReply implements Serializable {
+        private byte[] encryptedNum;
+        private int randomNumForYou;
+
+        PlainAuthenticationReply(AuthenticationReply reply)
+        {
+            this.encryptedNum = reply.getEncryptedNum();
+            this.randomNumForYou = reply.getRandomNumForYou();
+        }
+    }
+
+    /**
+     * A state with the fields and the default serialized form of State before the binary format
+     */
+    private static class PlainState implements Serializable {
+        private HashMap<String,PlainAuction> activeAuctions = new HashMap<>();
+        private HashMap<String,PlainClient> registeredClients = new HashMap<>();
+        private HashMap<String,PlainAuction> closedAuctions = new HashMap<>();
+        private long sequence;
+    }
+
+    private interface Writer {
+        void write(DataOutput out) throws Exception;
+    }
+
+    private interface Task {
+        Object run() throws Exception;
+    }
+}
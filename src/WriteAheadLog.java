@@ -0,0 +1,733 @@
+import org.jgroups.util.ByteArrayDataOutputStream;
+import org.jgroups.util.ByteBufferInputStream;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * The log of the mutations applied by a replica, kept on disk so that the state survives a restart
+ * of every replica. The directory of the log holds a snapshot of the state and the segments of the log
+ * with the mutations applied after it. A segment is named after the sequence number of the last mutation
+ * before it, mutations-[sequence].log. Once a new snapshot is written the segments before it are deleted,
+ * so the log only grows by the mutations applied since the last snapshot.
+ * The mutations are appended to a buffer in memory and written by a single thread, which forces
+ * every mutation appended while the previous write was forced to the disk at once (group commit),
+ * so many operations share one fsync. The replies to the requests are sent by whenDurable once their
+ * mutations are forced, without blocking the thread that executes the requests. Every record is [length][CRC32][data],
+ * a record at the end of the last segment that was not completely written when the replica stopped is removed
+ * when the log is opened.
+ * @author Emmeleia Arakleitou
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final String SNAPSHOT_NAME = "state.snapshot";
+    private static final String SEGMENT_PREFIX = "mutations-", SEGMENT_SUFFIX = ".log";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final File directory;
+    private File file;
+    private FileChannel channel;
+    private long segmentStart;
+    //held while writing to the segments, before the lock of the log.
+    private final Object ioLock = new Object();
+    //held while writing the snapshot, after ioLock if both are held.
+    private final Object snapshotLock = new Object();
+    private ByteArrayDataOutputStream pending = new ByteArrayDataOutputStream(BUFFER_SIZE);
+    private ByteArrayDataOutputStream spare = new ByteArrayDataOutputStream(BUFFER_SIZE);
+    private volatile long end;
+    private long appendedSequence, durableSequence;
+    private long syncs, syncedMutations, pendingMutations;
+    private final ArrayList<Waiter> waiters = new ArrayList<>();
+    //the copy of the state given to roll that is not written yet.
+    private State nextSnapshot;
+    private long snapshots;
+    private IOException failure;
+    private boolean closed;
+    private final Thread syncer;
+
+    /**
+     * Opens the log, creating the directory if it does not exist, and starts the thread that writes the mutations.
+     * The log must be read with replay before anything is appended.
+     * @param directory the directory of the snapshot and the segments
+     * @throws IOException if the directory can not be created
+     */
+    public WriteAheadLog(File directory) throws IOException
+    {
+        if(!directory.exists() && !directory.mkdirs())
+            throw new IOException("[STORE] Can not create the directory " + directory);
+        this.directory = directory;
+        this.syncer = new Thread(this::sync, "wal-sync");
+        this.syncer.setDaemon(true);
+        this.syncer.start();
+    }
+
+    /**
+     * Reads the log into a state: the snapshot and then every mutation of the segments that follows it in sequence.
+     * Only the last segment can end with a record that was not completely written when the replica stopped,
+     * that record is removed. Any other missing or corrupt record fails the replay without changing any file,
+     * since the mutations after it can not be applied and may be the only copy of acknowledged writes.
+     * The mutations appended after it are written to a new segment.
+     * @param state the empty state to read into
+     * @param applied called with every mutation after it is applied to the state
+     * @return the number of mutations applied to the state after the snapshot
+     * @throws IOException if the log can not be read or mutations are missing
+     */
+    public long replay(State state, Consumer<Mutation> applied) throws IOException
+    {
+        synchronized (ioLock)
+        {
+            readSnapshot(state);
+            long[] mutations = {0};
+            TreeSet<Long> segments = segments();
+            for(long start : segments)
+            {
+                File segment = segmentFile(start);
+                try (FileChannel in = FileChannel.open(segment.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE))
+                {
+                    ByteBuffer records = readFully(in, in.size());
+                    long[] missed = {0};
+                    int offset = readRecords(records, mutation -> {
+                        if(mutation.getSequence() > state.getSequence() + 1)
+                        {
+                            missed[0] = mutation.getSequence();
+                            return false;
+                        }
+                        if(mutation.getSequence() == state.getSequence() + 1)
+                        {
+                            state.apply(mutation);
+                            applied.accept(mutation);
+                            mutations[0]++;
+                        }
+                        return true;
+                    });
+                    if(missed[0] != 0)
+                        throw new IOException("[STORE] Missed mutations " + (state.getSequence() + 1) + " to " + (missed[0] - 1)
+                                + " before " + segment + ", the snapshot is missing or corrupt. The log is not changed");
+                    if(offset < records.limit())
+                    {
+                        if(start != segments.last())
+                            throw new IOException("[STORE] " + segment + " has a corrupt record at " + offset
+                                    + " but is not the last segment. The log is not changed");
+                        System.out.println("[STORE] Removed an incomplete record at the end of " + segment);
+                        in.truncate(offset);
+                        in.force(false);
+                    }
+                }
+            }
+            openSegment(state.getSequence());
+            synchronized (this)
+            {
+                this.appendedSequence = this.durableSequence = state.getSequence();
+            }
+            return mutations[0];
+        }
+    }
+
+    /**
+     * Reads the snapshot into a state, if there is one and it is complete
+     * @param state the empty state to read into
+     * @throws IOException
+     */
+    private void readSnapshot(State state) throws IOException
+    {
+        File snapshot = new File(directory, SNAPSHOT_NAME);
+        if(!snapshot.exists())
+            return;
+        try (FileChannel in = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ))
+        {
+            ByteBuffer record = readFully(in, in.size());
+            ByteBuffer data = readRecord(record);
+            if(data == null)
+            {
+                System.out.println("[STORE] The snapshot " + snapshot + " is corrupt and is ignored");
+                return;
+            }
+            state.readFrom(new ByteBufferInputStream(data));
+        }
+    }
+
+    /**
+     * Appends a mutation to the log. The mutation is written and forced to the disk by the thread of the log,
+     * use whenDurable to wait for it. Mutations must be appended in sequence order.
+     * @param mutation the mutation that was applied
+     */
+    public synchronized void append(Mutation mutation)
+    {
+        try {
+            writeRecord(pending, mutation::writeTo);
+        } catch (IOException e) {
+            //the buffer is in memory, writing to it does not fail.
+            throw new UncheckedIOException(e);
+        }
+        this.appendedSequence = mutation.getSequence();
+        this.pendingMutations++;
+        notifyAll();
+    }
+
+    /**
+     * Starts a new segment after a copy of the state, which is written as the snapshot by the next call
+     * to snapshot. Must be called while the state does not change, so the mutations appended after it
+     * are the ones that follow the copy.
+     * @param copy a copy of the state after the last appended mutation
+     * @throws IOException if the segment can not be written or created
+     */
+    public void roll(State copy) throws IOException
+    {
+        try {
+            synchronized (ioLock)
+            {
+                flush();
+                if(copy.getSequence() != segmentStart)
+                    openSegment(copy.getSequence());
+            }
+        } finally {
+            notifyWaiters();
+        }
+        synchronized (this)
+        {
+            nextSnapshot = copy;
+        }
+    }
+
+    /**
+     * Writes the copy of the state given to the last call of roll as the snapshot and deletes the segments
+     * before it. Takes as long as writing the whole state, so it is called by a thread that does not
+     * execute requests. Does nothing if the copy is already written or replaced by reset.
+     * @throws IOException
+     */
+    public void snapshot() throws IOException
+    {
+        State state;
+        synchronized (snapshotLock)
+        {
+            synchronized (this)
+            {
+                state = nextSnapshot;
+                nextSnapshot = null;
+            }
+            if(state == null)
+                return;
+            ByteArrayDataOutputStream out = new ByteArrayDataOutputStream(state.size() + 16);
+            writeRecord(out, state::writeTo);
+            writeSnapshot(out);
+        }
+        synchronized (ioLock)
+        {
+            deleteSegmentsBefore(state.getSequence());
+        }
+    }
+
+    /**
+     * Replaces the log with a snapshot of a state, used when the state is received from an other replica.
+     * The mutations that were not written yet are dropped, since they are part of the new state or replaced by it.
+     * @param state the new state, must not change while it is written
+     * @throws IOException
+     */
+    public void reset(State state) throws IOException
+    {
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream(state.size() + 16);
+        writeRecord(out, state::writeTo);
+        try {
+            synchronized (ioLock)
+            {
+                synchronized (this)
+                {
+                    pending.position(0);
+                    pendingMutations = 0;
+                    nextSnapshot = null;
+                }
+                //the segments are deleted before the snapshot is replaced, so the mutations they hold
+                //are never applied to the new state after a restart.
+                channel.close();
+                channel = null;
+                for(long start : segments())
+                    Files.delete(segmentFile(start).toPath());
+                synchronized (snapshotLock)
+                {
+                    writeSnapshot(out);
+                }
+                openSegment(state.getSequence());
+                synchronized (this)
+                {
+                    this.appendedSequence = this.durableSequence = state.getSequence();
+                }
+            }
+        } catch (IOException e) {
+            //the log may have no segment left, so nothing can be written to it anymore.
+            synchronized (this)
+            {
+                failure = e;
+            }
+            throw e;
+        } finally {
+            notifyWaiters();
+        }
+    }
+
+    /**
+     * Returns the mutations appended after a sequence number, including the ones that are not on the disk yet,
+     * used to bring a replica that restarted up to date. Blocks the writes of the log while the segments are read.
+     * @param sequence the sequence number of the last mutation the replica has
+     * @return the mutations in sequence order, or null if the log does not hold all of them
+     * @throws IOException
+     */
+    public List<Mutation> readAfter(long sequence) throws IOException
+    {
+        synchronized (ioLock)
+        {
+            ByteBuffer unwritten;
+            long appended;
+            synchronized (this)
+            {
+                unwritten = ByteBuffer.wrap(Arrays.copyOf(pending.buffer(), pending.position()));
+                appended = appendedSequence;
+            }
+            TreeSet<Long> segments = segments();
+            Long first = segments.floor(sequence);
+            if(first == null || sequence > appended)
+                return null;
+            List<Mutation> mutations = new ArrayList<>();
+            MutationHandler collect = mutation -> {
+                long next = sequence + mutations.size() + 1;
+                if(mutation.getSequence() < next)
+                    return true;
+                if(mutation.getSequence() > next)
+                    return false;
+                mutations.add(mutation);
+                return true;
+            };
+            for(long start : segments.tailSet(first))
+            {
+                if(start == segmentStart)
+                    readRecords(readFully(channel, end), collect);
+                else
+                    try (FileChannel in = FileChannel.open(segmentFile(start).toPath(), StandardOpenOption.READ))
+                    {
+                        readRecords(readFully(in, in.size()), collect);
+                    }
+            }
+            readRecords(unwritten, collect);
+            return sequence + mutations.size() == appended ? mutations : null;
+        }
+    }
+
+    /**
+     * Calls an action once a mutation and the mutations before it are on the disk,
+     * at once if they already are, otherwise from the thread of the log.
+     * @param sequence the sequence number of the mutation
+     * @param action called with null, or with the exception if the log can not be written
+     */
+    public void whenDurable(long sequence, Consumer<IOException> action)
+    {
+        IOException result;
+        synchronized (this)
+        {
+            if(durableSequence < sequence && failure == null && !closed)
+            {
+                waiters.add(new Waiter(sequence, action));
+                return;
+            }
+            result = durableSequence < sequence ? closedOrFailed() : null;
+        }
+        action.accept(result);
+    }
+
+    /**
+     * Returns the exception given to the actions that wait for mutations that will never be forced
+     * @return IOException
+     */
+    private IOException closedOrFailed()
+    {
+        return failure != null ? failure : new IOException("[STORE] The log in " + directory + " is closed");
+    }
+
+    /**
+     * Calls the actions waiting for mutations that are on the disk, or all of them if the log failed or is closed.
+     * Called without holding a lock, after the mutations on the disk change.
+     */
+    private void notifyWaiters()
+    {
+        ArrayList<Waiter> ready = new ArrayList<>();
+        IOException result;
+        synchronized (this)
+        {
+            boolean all = failure != null || closed;
+            Iterator<Waiter> iterator = waiters.iterator();
+            while (iterator.hasNext())
+            {
+                Waiter waiter = iterator.next();
+                if(all || waiter.sequence <= durableSequence)
+                {
+                    ready.add(waiter);
+                    iterator.remove();
+                }
+            }
+            result = all ? closedOrFailed() : null;
+        }
+        for(Waiter waiter : ready)
+        {
+            try {
+                waiter.action.accept(waiter.sequence <= durableSequence ? null : result);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Writes the appended mutations and forces them to the disk until the log is closed.
+     * The mutations appended while a batch is forced form the next batch.
+     */
+    private void sync()
+    {
+        while (true)
+        {
+            synchronized (this)
+            {
+                while (pending.position() == 0 && !closed)
+                {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if(pending.position() == 0)
+                {
+                    notifyWaiters();
+                    return;
+                }
+            }
+            try {
+                synchronized (ioLock)
+                {
+                    flush();
+                }
+            } catch (IOException e) {
+                System.out.println("[STORE] Failed to write " + file + ": " + e.getMessage());
+                notifyWaiters();
+                return;
+            }
+            notifyWaiters();
+        }
+    }
+
+    /**
+     * Writes the appended mutations to the segment and forces them to the disk.
+     * Must be called while holding ioLock.
+     * @throws IOException if the segment can not be written, the log can not be used after it
+     */
+    private void flush() throws IOException
+    {
+        ByteArrayDataOutputStream batch;
+        long sequence, mutations;
+        synchronized (this)
+        {
+            if(failure != null)
+                throw failure;
+            //the mutations may have been dropped by reset meanwhile.
+            if(pending.position() == 0)
+                return;
+            batch = pending;
+            pending = spare;
+            spare = batch;
+            sequence = appendedSequence;
+            mutations = pendingMutations;
+            pendingMutations = 0;
+        }
+        try {
+            write(batch, end);
+            channel.force(false);
+            end += batch.position();
+        } catch (IOException e) {
+            synchronized (this)
+            {
+                failure = e;
+            }
+            throw e;
+        }
+        synchronized (this)
+        {
+            batch.position(0);
+            durableSequence = sequence;
+            syncs++;
+            syncedMutations += mutations;
+        }
+    }
+
+    /**
+     * Writes a buffer to the segment
+     * @param buffer the records to write
+     * @param position the position in the segment
+     * @throws IOException
+     */
+    private void write(ByteArrayDataOutputStream buffer, long position) throws IOException
+    {
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.buffer(), 0, buffer.position());
+        while (bytes.hasRemaining())
+            channel.write(bytes, position + bytes.position());
+    }
+
+    /**
+     * Closes the segment and starts an empty one for the mutations after a sequence number.
+     * Must be called while holding ioLock, after the appended mutations are written.
+     * @param sequence the sequence number of the last mutation before the segment
+     * @throws IOException
+     */
+    private void openSegment(long sequence) throws IOException
+    {
+        if(channel != null)
+            channel.close();
+        file = segmentFile(sequence);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segmentStart = sequence;
+        end = 0;
+        forceDirectory();
+    }
+
+    /**
+     * Returns the file of a segment
+     * @param sequence the sequence number of the last mutation before the segment
+     * @return File
+     */
+    private File segmentFile(long sequence)
+    {
+        return new File(directory, SEGMENT_PREFIX + sequence + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Returns the segments of the directory
+     * @return the sequence numbers the segments are named after, in order
+     */
+    private TreeSet<Long> segments()
+    {
+        TreeSet<Long> segments = new TreeSet<>();
+        String[] names = directory.list();
+        if(names == null)
+            return segments;
+        for(String name : names)
+        {
+            if(!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX))
+                continue;
+            try {
+                segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            } catch (NumberFormatException e) {
+                //not a segment of the log.
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Deletes the segments that only hold mutations of a snapshot.
+     * Must be called while holding ioLock.
+     * @param sequence the sequence number of the snapshot
+     * @throws IOException
+     */
+    private void deleteSegmentsBefore(long sequence) throws IOException
+    {
+        TreeSet<Long> segments = segments();
+        //the mutations after the snapshot start in the last segment that starts before it.
+        Long first = segments.floor(sequence);
+        if(first == null)
+            return;
+        for(long start : segments.headSet(first))
+            Files.delete(segmentFile(start).toPath());
+    }
+
+    /**
+     * Replaces the snapshot with a new one. The snapshot is written to a temporary file that is then renamed,
+     * so a replica that stops meanwhile still has the previous one.
+     * Must be called while holding snapshotLock.
+     * @param record the record of the state
+     * @throws IOException
+     */
+    private void writeSnapshot(ByteArrayDataOutputStream record) throws IOException
+    {
+        File temporary = new File(directory, SNAPSHOT_NAME + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            ByteBuffer bytes = ByteBuffer.wrap(record.buffer(), 0, record.position());
+            while (bytes.hasRemaining())
+                out.write(bytes);
+            out.force(false);
+        }
+        Files.move(temporary.toPath(), new File(directory, SNAPSHOT_NAME).toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory();
+        synchronized (this)
+        {
+            snapshots++;
+        }
+    }
+
+    /**
+     * Forces the names of the files of the directory to the disk, after a file is created or renamed
+     */
+    private void forceDirectory()
+    {
+        try (FileChannel names = FileChannel.open(directory.toPath(), StandardOpenOption.READ))
+        {
+            names.force(true);
+        } catch (IOException e) {
+            //some systems do not allow a directory to be opened, the names are written by the system later.
+        }
+    }
+
+    /**
+     * Reads the beginning of a file
+     * @param in the file
+     * @param length the number of bytes to read
+     * @return ByteBuffer
+     * @throws IOException
+     */
+    private static ByteBuffer readFully(FileChannel in, long length) throws IOException
+    {
+        if(length > Integer.MAX_VALUE)
+            throw new IOException("[STORE] A file of the log is larger than 2 GB");
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining() && in.read(buffer, buffer.position()) > 0);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Something that receives the mutations of the records
+     */
+    private interface MutationHandler {
+        boolean accept(Mutation mutation);
+    }
+
+    /**
+     * Decodes the mutations of the records of a buffer, until a record is incomplete or corrupt
+     * or the handler does not accept a mutation.
+     * @param records the records
+     * @param handler receives every mutation and returns false to stop
+     * @return the offset of the first record that was not accepted, or the end of the records
+     * @throws IOException
+     */
+    private static int readRecords(ByteBuffer records, MutationHandler handler) throws IOException
+    {
+        while (true)
+        {
+            int offset = records.position();
+            ByteBuffer data = readRecord(records);
+            if(data == null)
+                return offset;
+            Mutation mutation = new Mutation();
+            mutation.readFrom(new ByteBufferInputStream(data));
+            if(!handler.accept(mutation))
+                return offset;
+        }
+    }
+
+    /**
+     * Reads a record and checks its checksum
+     * @param records the buffer, positioned at the record
+     * @return the data of the record, or null if the record is incomplete or corrupt
+     */
+    private static ByteBuffer readRecord(ByteBuffer records)
+    {
+        int offset = records.position();
+        if(records.limit() - offset < 8)
+            return null;
+        int length = records.getInt(offset), checksum = records.getInt(offset + 4);
+        if(length <= 0 || length > records.limit() - offset - 8)
+            return null;
+        CRC32 crc = new CRC32();
+        crc.update(records.array(), records.arrayOffset() + offset + 8, length);
+        if((int) crc.getValue() != checksum)
+            return null;
+        ByteBuffer data = ByteBuffer.wrap(records.array(), records.arrayOffset() + offset + 8, length).slice();
+        records.position(offset + 8 + length);
+        return data;
+    }
+
+    /**
+     * An action waiting for a mutation to be forced to the disk
+     */
+    private static class Waiter {
+        final long sequence;
+        final Consumer<IOException> action;
+
+        Waiter(long sequence, Consumer<IOException> action)
+        {
+            this.sequence = sequence;
+            this.action = action;
+        }
+    }
+
+    /**
+     * Something that writes itself in the binary format
+     */
+    private interface Writer {
+        void write(DataOutput out) throws IOException;
+    }
+
+    /**
+     * Writes a record with its length and checksum
+     * @param out the buffer to write to
+     * @param writer writes the data of the record
+     * @throws IOException
+     */
+    private static void writeRecord(ByteArrayDataOutputStream out, Writer writer) throws IOException
+    {
+        int start = out.position();
+        out.writeInt(0);
+        out.writeInt(0);
+        writer.write(out);
+        int length = out.position() - start - 8;
+        CRC32 crc = new CRC32();
+        crc.update(out.buffer(), start + 8, length);
+        ByteBuffer header = ByteBuffer.wrap(out.buffer(), start, 8);
+        header.putInt(length);
+        header.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Returns the metrics of the log
+     * @return String
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return "[WAL] syncs=" + syncs + " mutations=" + syncedMutations
+                + " mutationsPerSync=" + (syncs == 0 ? 0 : syncedMutations / syncs)
+                + " snapshots=" + snapshots + " segment=" + segmentStart + " bytes=" + end;
+    }
+
+    /**
+     * Writes the remaining mutations and closes the segment of the log
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException
+    {
+        synchronized (this)
+        {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (ioLock)
+        {
+            if(channel != null)
+                channel.close();
+        }
+    }
+}